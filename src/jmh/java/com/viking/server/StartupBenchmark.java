@@ -0,0 +1,42 @@
+package com.viking.server;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to the first successful {@code StoreContent}, from starting the
+ * application in a fresh JVM; see {@link StartupProbe}. Each fork measures
+ * one cold start, so the score is the mean over the forks.
+ *
+ * <p>This covers everything after the JVM is up. An AOT cache or CDS
+ * archive only applies to the class path it was trained on, which forks
+ * of this benchmark do not have; measure those with {@code StartupProbe}
+ * against the {@code fast-startup} build instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class StartupBenchmark {
+
+    /** Streaming mode stores without JAXB, so the first store does not wait for the JAXB context. */
+    @Param({ "false", "true" })
+    boolean streaming;
+
+    @Benchmark
+    public StartupProbe.Result firstStoreContent() throws Exception {
+        return StartupProbe.run("--content.ws.streaming=" + streaming, "--logging.level.root=WARN");
+    }
+}
@@ -0,0 +1,85 @@
+package com.viking.server.config;
+
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.oxm.jaxb.Jaxb2Marshaller;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.samples.mtom.schema.LoadContentResponse;
+import org.springframework.ws.samples.mtom.schema.ObjectFactory;
+import org.springframework.ws.samples.mtom.schema.StoreContentRequest;
+import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
+import org.springframework.ws.support.MarshallingUtils;
+
+import com.viking.io.BytesDataSource;
+
+import jakarta.activation.DataHandler;
+
+/**
+ * JAXB/MTOM marshalling through the {@link Jaxb2Marshaller} that
+ * {@link ServerConfiguration} configures, including writing the resulting
+ * multipart SAAJ message, which is where the attachment bytes are copied.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MarshallingBenchmark {
+
+    @Param({ "1024", "1048576" })
+    int size;
+
+    private Jaxb2Marshaller marshaller;
+    private SaajSoapMessageFactory messageFactory;
+    private StoreContentRequest storeRequest;
+    private LoadContentResponse loadResponse;
+
+    @Setup
+    public void setUp() throws Exception {
+        marshaller = new ServerConfiguration().marshaller();
+        marshaller.afterPropertiesSet();
+        messageFactory = new SaajSoapMessageFactory();
+        messageFactory.afterPropertiesSet();
+
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        ObjectFactory objectFactory = new ObjectFactory();
+        storeRequest = objectFactory.createStoreContentRequest();
+        storeRequest.setName("bench");
+        storeRequest.setContent(new DataHandler(new BytesDataSource(data)));
+        loadResponse = objectFactory.createLoadContentResponse();
+        loadResponse.setName("bench");
+        loadResponse.setContent(new DataHandler(new BytesDataSource(data)));
+    }
+
+    @Benchmark
+    public WebServiceMessage marshalStoreContentRequest() throws Exception {
+        return marshalAndWrite(storeRequest);
+    }
+
+    @Benchmark
+    public WebServiceMessage marshalLoadContentResponse() throws Exception {
+        return marshalAndWrite(loadResponse);
+    }
+
+    private WebServiceMessage marshalAndWrite(Object payload) throws Exception {
+        WebServiceMessage message = messageFactory.createWebServiceMessage();
+        MarshallingUtils.marshal(marshaller, payload, message);
+        message.writeTo(OutputStream.nullOutputStream());
+        return message;
+    }
+}
@@ -0,0 +1,65 @@
+package com.viking.server.service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Startup cost of the content index: replaying a log of {@code entries}
+ * live names, which is what opening the repository pays instead of walking
+ * the store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ContentIndexBenchmark {
+
+    @Param({ "10000", "1000000" })
+    int entries;
+
+    private Path indexDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        indexDir = Files.createTempDirectory("index-bench");
+        try (ContentIndex index = ContentIndex.open(indexDir)) {
+            for (int i = 0; i < entries; i++) {
+                String name = "content-" + i;
+                String hash = ContentIndex.nameHash(name);
+                String location = ContentIndex.shardedLocation(ContentRepositoryImpl.OBJECT_DIR, hash);
+                index.put(new ContentIndex.Entry(name, location, index.nextVersion(), 1024, 1024, hash,
+                        System.currentTimeMillis(), "application/octet-stream"));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        FileSystemUtils.deleteRecursively(indexDir);
+    }
+
+    @Benchmark
+    public long replay() throws Exception {
+        try (ContentIndex index = ContentIndex.open(indexDir)) {
+            return index.storedBytes();
+        }
+    }
+}
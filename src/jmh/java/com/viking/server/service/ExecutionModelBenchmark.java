@@ -0,0 +1,160 @@
+package com.viking.server.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import jakarta.activation.DataHandler;
+import jakarta.activation.DataSource;
+
+/**
+ * How long {@code connections} slow uploads take to complete under each
+ * execution model.
+ *
+ * <p>Every upload trickles in as small chunks with a pause between them,
+ * like a client on a slow link. {@code platform} serves them from a pool
+ * the size of Tomcat's default of 200 threads and writes on the request
+ * thread, which is the current model. {@code virtual} serves each upload
+ * on its own virtual thread and writes through the bounded disk pool,
+ * which is the {@code virtual} profile. Once connections exceed the pool,
+ * the platform model queues them and the time grows in steps of the
+ * per-upload duration. The virtual model should stay close to a single
+ * upload's duration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExecutionModelBenchmark {
+
+    private static final int PLATFORM_POOL_SIZE = 200;
+    private static final int DISK_IO_THREADS = 8;
+    private static final int UPLOAD_SIZE = 1024;
+    private static final int CHUNK_SIZE = 256;
+    private static final long CHUNK_PAUSE_MILLIS = 5;
+
+    @Param({ "100", "1000", "5000" })
+    int connections;
+
+    @Param({ "platform", "virtual" })
+    String model;
+
+    private Path storeDir;
+    private ContentRepositoryImpl repository;
+    private ExecutorService requestThreads;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        storeDir = Files.createTempDirectory("model-bench");
+        repository = new ContentRepositoryImpl();
+        repository.fileStorePath = storeDir.toString();
+        boolean virtual = model.equals("virtual");
+        repository.diskIoThreads = virtual ? DISK_IO_THREADS : 0;
+        // every iteration overwrites all names; their old versions must not hold the quota
+        repository.retiredFileGrace = Duration.ZERO;
+        repository.init();
+        requestThreads = virtual
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(PLATFORM_POOL_SIZE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        requestThreads.shutdownNow();
+        repository.shutdown();
+        FileSystemUtils.deleteRecursively(storeDir);
+    }
+
+    @Benchmark
+    public long slowUploads() throws Exception {
+        List<Future<?>> uploads = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            String name = "connection-" + i;
+            uploads.add(requestThreads.submit(() -> {
+                repository.storeContent(name, new DataHandler(new SlowDataSource()));
+                return null;
+            }));
+        }
+        for (Future<?> upload : uploads) {
+            upload.get();
+        }
+        return repository.usedBytes();
+    }
+
+    /** Hands out {@link #UPLOAD_SIZE} bytes in chunks, pausing before each one. */
+    private static final class SlowDataSource implements DataSource {
+
+        @Override
+        public InputStream getInputStream() {
+            return new InputStream() {
+                private int remaining = UPLOAD_SIZE;
+
+                @Override
+                public int read() throws IOException {
+                    byte[] single = new byte[1];
+                    return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    if (remaining == 0) {
+                        return -1;
+                    }
+                    try {
+                        Thread.sleep(CHUNK_PAUSE_MILLIS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException(e);
+                    }
+                    int count = Math.min(Math.min(length, CHUNK_SIZE), remaining);
+                    for (int i = 0; i < count; i++) {
+                        buffer[offset + i] = (byte) 0xFF;
+                    }
+                    remaining -= count;
+                    return count;
+                }
+            };
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getContentType() {
+            return "application/octet-stream";
+        }
+
+        @Override
+        public String getName() {
+            return "slow";
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.viking.server.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.viking.exception.ValidationException;
+
+/**
+ * {@link ContentRepositoryImpl#validateNotJSON} on the three kinds of input
+ * that matter: binary data, which the sniffer rejects at the first byte;
+ * JSON, which is read to the end; and near-JSON, a large document that only
+ * turns invalid at its last byte and so is the worst case for the sniffer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonValidationBenchmark {
+
+    @Param({ "binary", "json", "nearJson" })
+    String input;
+
+    @Param({ "1024", "1048576" })
+    int size;
+
+    private final ContentRepositoryImpl repository = new ContentRepositoryImpl();
+    private byte[] content;
+
+    @Setup
+    public void setUp() {
+        content = switch (input) {
+            case "binary" -> {
+                byte[] data = new byte[size];
+                new Random(42).nextBytes(data);
+                // JPEG start-of-image marker, like a typical upload
+                data[0] = (byte) 0xFF;
+                data[1] = (byte) 0xD8;
+                data[2] = (byte) 0xFF;
+                data[3] = (byte) 0xE0;
+                yield data;
+            }
+            case "json" -> jsonDocument(size, "]");
+            case "nearJson" -> jsonDocument(size, ",");
+            default -> throw new IllegalArgumentException(input);
+        };
+    }
+
+    @Benchmark
+    public boolean validateNotJSON() {
+        try {
+            repository.validateNotJSON(content);
+            return true;
+        } catch (ValidationException e) {
+            return false;
+        }
+    }
+
+    /** A JSON array of small objects, about {@code size} bytes long, closed by {@code end}. */
+    private static byte[] jsonDocument(int size, String end) {
+        StringBuilder json = new StringBuilder(size + 64).append('[');
+        for (int i = 0; json.length() < size; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(i).append(",\"name\":\"item-").append(i).append("\",\"ok\":true}");
+        }
+        return json.append(end).toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
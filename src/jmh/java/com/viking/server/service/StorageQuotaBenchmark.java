@@ -0,0 +1,95 @@
+package com.viking.server.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Cost of the storage quota check against a store holding {@code files}
+ * content files. {@code scanStore} is the directory walk that every upload
+ * used to pay; {@code indexStoredBytes} is what the quota starts from now,
+ * and {@code reserveAndRelease} is what an upload pays per chunk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageQuotaBenchmark {
+
+    @Param({ "10", "1000", "50000" })
+    int files;
+
+    private Path storeDir;
+    private ContentIndex index;
+    private StorageQuota quota;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        storeDir = Files.createTempDirectory("quota-bench");
+        index = ContentIndex.open(storeDir.resolve(ContentIndex.INDEX_DIR));
+        byte[] content = new byte[16];
+        for (int i = 0; i < files; i++) {
+            String name = "content-" + i;
+            String location = ContentIndex.shardedLocation(ContentRepositoryImpl.OBJECT_DIR,
+                    ContentIndex.nameHash(name));
+            Path file = storeDir.resolve(location);
+            Files.createDirectories(file.getParent());
+            Files.write(file, content);
+            index.put(new ContentIndex.Entry(name, location, i + 1, content.length, content.length, "", 0, null));
+        }
+        quota = new StorageQuota(Long.MAX_VALUE / 2, index.storedBytes());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        index.close();
+        FileSystemUtils.deleteRecursively(storeDir);
+    }
+
+    @Benchmark
+    public long scanStore() {
+        try (Stream<Path> paths = Files.walk(storeDir.resolve(ContentRepositoryImpl.OBJECT_DIR))) {
+            long used = 0;
+            for (Path file : (Iterable<Path>) paths.filter(Files::isRegularFile)::iterator) {
+                used += Files.size(file);
+            }
+            return used;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Benchmark
+    public long indexStoredBytes() {
+        return index.storedBytes();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long reserveAndRelease() throws Exception {
+        quota.reserve(64 * 1024);
+        quota.release(64 * 1024);
+        return quota.used();
+    }
+}
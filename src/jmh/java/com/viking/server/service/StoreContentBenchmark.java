@@ -0,0 +1,78 @@
+package com.viking.server.service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import com.viking.io.BytesDataSource;
+
+import jakarta.activation.DataHandler;
+
+/**
+ * Full store path of {@link ContentRepositoryImpl}: JSON sniffing, quota
+ * reservation, spooling to disk and the publishing rename. The same name is
+ * overwritten on every invocation, so the store never runs into its quota;
+ * replaced versions are deleted without a grace period, as they stay
+ * charged to the quota until then.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoreContentBenchmark {
+
+    @Param({ "1024", "65536", "1048576", "3145728" })
+    int size;
+
+    @Param({ "false", "true" })
+    boolean dedup;
+
+    private Path storeDir;
+    private ContentRepositoryImpl repository;
+    private DataHandler content;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        storeDir = Files.createTempDirectory("store-bench");
+        repository = new ContentRepositoryImpl();
+        repository.fileStorePath = storeDir.toString();
+        repository.dedup = dedup;
+        repository.retiredFileGrace = Duration.ZERO;
+        repository.init();
+
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        content = new DataHandler(new BytesDataSource(data));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        repository.shutdown();
+        FileSystemUtils.deleteRecursively(storeDir);
+    }
+
+    @Benchmark
+    public long storeContent() throws Exception {
+        repository.storeContent("bench", content);
+        return repository.usedBytes();
+    }
+}
@@ -0,0 +1,185 @@
+package com.viking.server.ws;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.oxm.jaxb.Jaxb2Marshaller;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.context.DefaultMessageContext;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.samples.mtom.schema.ObjectFactory;
+import org.springframework.ws.samples.mtom.schema.StoreContentRequest;
+import org.springframework.ws.samples.mtom.schema.StoreContentResponse;
+import org.springframework.ws.soap.axiom.AxiomSoapMessageFactory;
+import org.springframework.ws.soap.saaj.SaajSoapMessage;
+import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
+import org.springframework.ws.support.MarshallingUtils;
+import org.springframework.ws.transport.TransportInputStream;
+
+import com.viking.io.BytesDataSource;
+import com.viking.server.config.ServerConfiguration;
+import com.viking.server.metrics.ContentMetrics;
+import com.viking.server.service.ContentInfo;
+import com.viking.server.service.ContentRepository;
+import com.viking.server.service.StoredContent;
+
+import jakarta.activation.DataHandler;
+
+/**
+ * One MTOM {@code StoreContentRequest} taken from raw HTTP body to response
+ * message, through the default SAAJ + JAXB path and through the streaming
+ * Axiom path. The repository only drains the attachment, so the
+ * numbers are the cost of the message handling alone; compare the
+ * {@code gc.alloc.rate.norm} columns for the heap per upload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoreContentPathBenchmark {
+
+    @Param({ "1024", "1048576", "3145728" })
+    int size;
+
+    private byte[] requestBody;
+    private String contentType;
+
+    private SaajSoapMessageFactory saajFactory;
+    private Jaxb2Marshaller marshaller;
+    private ContentRepositoryEndpoint jaxbEndpoint;
+
+    private AxiomSoapMessageFactory axiomFactory;
+    private StreamingStoreContentEndpoint streamingEndpoint;
+
+    @Setup
+    public void setUp() throws Exception {
+        marshaller = new ServerConfiguration().marshaller();
+        marshaller.afterPropertiesSet();
+        saajFactory = new SaajSoapMessageFactory();
+        saajFactory.afterPropertiesSet();
+        axiomFactory = new AxiomSoapMessageFactory();
+        axiomFactory.setPayloadCaching(true);
+        axiomFactory.setAttachmentCaching(true);
+        axiomFactory.setAttachmentCacheThreshold(64 * 1024);
+        axiomFactory.setAttachmentCacheDirectory(new File(System.getProperty("java.io.tmpdir")));
+        axiomFactory.afterPropertiesSet();
+
+        DrainingRepository repository = new DrainingRepository();
+        jaxbEndpoint = new ContentRepositoryEndpoint(repository, ContentMetrics.noop());
+        streamingEndpoint = new StreamingStoreContentEndpoint(repository, ContentMetrics.noop());
+
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        StoreContentRequest request = new ObjectFactory().createStoreContentRequest();
+        request.setName("bench");
+        request.setContent(new DataHandler(new BytesDataSource(data)));
+        SaajSoapMessage message = saajFactory.createWebServiceMessage();
+        MarshallingUtils.marshal(marshaller, request, message);
+        ByteArrayOutputStream body = new ByteArrayOutputStream(size + 1024);
+        message.writeTo(body);
+        requestBody = body.toByteArray();
+        contentType = message.getSaajMessage().getMimeHeaders().getHeader("Content-Type")[0];
+    }
+
+    @Benchmark
+    public WebServiceMessage saajJaxb() throws Exception {
+        MessageContext context = new DefaultMessageContext(
+                saajFactory.createWebServiceMessage(new RequestStream(requestBody, contentType)), saajFactory);
+        StoreContentRequest request = (StoreContentRequest) MarshallingUtils.unmarshal(marshaller, context.getRequest());
+        StoreContentResponse response = jaxbEndpoint.storeContent(request);
+        MarshallingUtils.marshal(marshaller, response, context.getResponse());
+        return context.getResponse();
+    }
+
+    @Benchmark
+    public WebServiceMessage axiomStreaming() throws Exception {
+        MessageContext context = new DefaultMessageContext(
+                axiomFactory.createWebServiceMessage(new RequestStream(requestBody, contentType)), axiomFactory);
+        streamingEndpoint.invoke(context);
+        return context.getResponse();
+    }
+
+    /** An HTTP request body with its Content-Type, as the servlet transport would hand it over. */
+    private static final class RequestStream extends TransportInputStream {
+
+        private final byte[] body;
+        private final String contentType;
+
+        RequestStream(byte[] body, String contentType) {
+            this.body = body;
+            this.contentType = contentType;
+        }
+
+        @Override
+        protected InputStream createInputStream() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public Iterator<String> getHeaderNames() {
+            return Collections.singletonList("Content-Type").iterator();
+        }
+
+        @Override
+        public Iterator<String> getHeaders(String name) {
+            return "Content-Type".equalsIgnoreCase(name)
+                    ? Collections.singletonList(contentType).iterator()
+                    : Collections.emptyIterator();
+        }
+    }
+
+    /** Reads every attachment to the end and keeps nothing. */
+    private static final class DrainingRepository implements ContentRepository {
+
+        @Override
+        public long storeContent(String name, DataHandler content, long ifMatchVersion) throws IOException {
+            try (InputStream in = content.getInputStream()) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            return 1;
+        }
+
+        @Override
+        @Deprecated
+        public File loadContent(String name) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public StoredContent openContent(String name) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean deleteContent(String name) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<ContentInfo> listContent(String prefix) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.viking.client;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.ws.samples.mtom.schema.ContentEntry;
+import org.springframework.ws.soap.client.SoapFaultClientException;
+
+import jakarta.activation.DataHandler;
+import jakarta.activation.FileDataSource;
+
+/**
+ * Bulk mode of the client: uploads every file under {@code bulk.upload-dir},
+ * or downloads every stored name under {@code bulk.prefix} into
+ * {@code bulk.download-dir}.
+ *
+ * <p>Files are transferred one per request, {@code bulk.parallelism} at a
+ * time, over the pooled connections of the client's message sender.
+ * Uploads read each file through a {@link FileDataSource} while the
+ * message is written instead of loading it up front. Stored names are the
+ * paths relative to the directory, with {@code /} separators, after the
+ * prefix. Every file gets its own result, so one failure does not stop the
+ * rest.
+ */
+@Component
+public class BulkTransfer {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkTransfer.class);
+
+    @Value("${bulk.upload-dir:}") String uploadDir = "";
+
+    @Value("${bulk.download-dir:}") String downloadDir = "";
+
+    /** Prepended to uploaded names; selects the names to download. */
+    @Value("${bulk.prefix:}") String prefix = "";
+
+    @Value("${bulk.parallelism:8}") int parallelism = 8;
+
+    /** Outcome of one file; {@code error} is {@code null} if it was transferred. */
+    public record FileResult(String name, Path file, long bytes, long nanos, String error) {
+
+        public boolean succeeded() {
+            return error == null;
+        }
+    }
+
+    public record Report(String direction, List<FileResult> files, long bytes, double elapsedSeconds) {
+
+        public long failures() {
+            return files.stream().filter(result -> !result.succeeded()).count();
+        }
+
+        public double bytesPerSecond() {
+            return bytes / elapsedSeconds;
+        }
+
+        public double filesPerSecond() {
+            return (files.size() - failures()) / elapsedSeconds;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Transfer<T> {
+        FileResult run(T item) throws Exception;
+    }
+
+    private final SaajMtomClient client;
+
+    public BulkTransfer(@Qualifier("saajClient") SaajMtomClient client) {
+        this.client = client;
+    }
+
+    public boolean isEnabled() {
+        return !uploadDir.isBlank() || !downloadDir.isBlank();
+    }
+
+    public Report run() throws IOException, InterruptedException {
+        Report report = !uploadDir.isBlank()
+                ? upload(Path.of(uploadDir), prefix)
+                : download(prefix, Path.of(downloadDir));
+        logSummary(report);
+        return report;
+    }
+
+    public Report upload(Path dir, String namePrefix) throws IOException, InterruptedException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            files = walk.filter(Files::isRegularFile).sorted().toList();
+        }
+        return transfer("upload", files, file -> {
+            String name = namePrefix + relativeName(dir, file);
+            long started = System.nanoTime();
+            client.store(name, new DataHandler(new FileDataSource(file.toFile())));
+            return new FileResult(name, file, Files.size(file), System.nanoTime() - started, null);
+        }, file -> namePrefix + relativeName(dir, file));
+    }
+
+    public Report download(String namePrefix, Path dir) throws IOException, InterruptedException {
+        Path target = dir.toAbsolutePath().normalize();
+        List<ContentEntry> entries = client.list(namePrefix);
+        return transfer("download", entries, entry -> {
+            Path file = target.resolve(entry.getName().substring(namePrefix.length())).normalize();
+            if (!file.startsWith(target) || file.equals(target)) {
+                return new FileResult(entry.getName(), null, 0, 0, "Name does not map to a file under " + target);
+            }
+            long started = System.nanoTime();
+            long bytes = client.loadTo(entry.getName(), file);
+            return new FileResult(entry.getName(), file, bytes, System.nanoTime() - started, null);
+        }, ContentEntry::getName);
+    }
+
+    private <T> Report transfer(String direction, List<T> items, Transfer<T> transfer,
+            Function<T, String> nameOf) throws InterruptedException {
+        long started = System.nanoTime();
+        List<Future<FileResult>> pending = new ArrayList<>(items.size());
+        try (ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                Thread.ofVirtual().name("bulk-" + direction + "-", 0).factory())) {
+            for (T item : items) {
+                pending.add(executor.submit(() -> {
+                    try {
+                        return transfer.run(item);
+                    } catch (SoapFaultClientException e) {
+                        return new FileResult(nameOf.apply(item), null, 0, 0, e.getFaultStringOrReason());
+                    } catch (Exception e) {
+                        logger.debug("Bulk {} of {} failed", direction, nameOf.apply(item), e);
+                        return new FileResult(nameOf.apply(item), null, 0, 0, e.toString());
+                    }
+                }));
+            }
+        }
+        List<FileResult> results = new ArrayList<>(pending.size());
+        long bytes = 0;
+        for (Future<FileResult> future : pending) {
+            FileResult result;
+            try {
+                result = future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+            results.add(result);
+            bytes += result.bytes();
+        }
+        return new Report(direction, results, bytes, (System.nanoTime() - started) / 1e9);
+    }
+
+    /** {@code file} relative to {@code dir}, with {@code /} separators on every platform. */
+    static String relativeName(Path dir, Path file) {
+        StringBuilder name = new StringBuilder();
+        for (Path part : dir.relativize(file)) {
+            if (!name.isEmpty()) {
+                name.append('/');
+            }
+            name.append(part);
+        }
+        return name.toString();
+    }
+
+    private void logSummary(Report report) {
+        for (FileResult result : report.files()) {
+            if (!result.succeeded()) {
+                logger.warn("{} failed: {}", result.name(), result.error());
+            }
+        }
+        logger.info(String.format(Locale.ROOT,
+                "Bulk %s of %d files with parallelism %d: %d failed, %.1f MB in %.2f s, %.1f MB/s, %.1f files/s",
+                report.direction(), report.files().size(), parallelism, report.failures(), report.bytes() / 1e6,
+                report.elapsedSeconds(), report.bytesPerSecond() / 1e6, report.filesPerSecond()));
+    }
+}
@@ -1,5 +1,9 @@
 package com.viking.client;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.oxm.jaxb.Jaxb2Marshaller;
@@ -10,15 +14,28 @@ import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
 public class ClientConfig {
     
     @Bean
-	public SaajMtomClient saajClient(SaajSoapMessageFactory messageFactory, Jaxb2Marshaller marshaller) {
+	public SaajMtomClient saajClient(SaajSoapMessageFactory messageFactory, Jaxb2Marshaller marshaller,
+			PooledHttpMessageSender messageSender) {
 
 		SaajMtomClient client = new SaajMtomClient(messageFactory);
 		client.setDefaultUri("http://localhost:8080/mtom-server/services");
 		client.setMarshaller(marshaller);
 		client.setUnmarshaller(marshaller);
+		client.setMessageSender(messageSender);
 		return client;
 	}
 
+	/** Keep-alive connections shared by every call, HTTP/2 where the server offers it. */
+	@Bean
+	public PooledHttpMessageSender messageSender(
+			@Value("${client.http.max-connections-per-route:16}") int maxConnectionsPerRoute,
+			@Value("${client.http.connect-timeout:PT5S}") Duration connectTimeout,
+			@Value("${client.http.request-timeout:PT60S}") Duration requestTimeout,
+			@Value("${client.http.version:HTTP_2}") HttpClient.Version version) {
+		return new PooledHttpMessageSender(new PooledHttpMessageSender.Settings(maxConnectionsPerRoute,
+				connectTimeout, requestTimeout, version));
+	}
+
 	@Bean
 	public SaajSoapMessageFactory messageFactory() {
 		SaajSoapMessageFactory factory = new SaajSoapMessageFactory();
@@ -0,0 +1,301 @@
+package com.viking.client;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.ws.soap.client.SoapFaultClientException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.viking.io.BytesDataSource;
+
+import jakarta.activation.DataHandler;
+
+/**
+ * Load-test mode of the client, switched on with {@code load.enabled=true}.
+ *
+ * <p>With a {@code load.rate} the generator is open-loop: requests are
+ * scheduled at fixed intervals whether or not earlier ones have finished,
+ * and latency is measured from the scheduled start, so time spent queued
+ * behind a slow server is counted instead of hidden (coordinated omission).
+ * With a rate of 0 it is closed-loop: {@code load.concurrency} workers send
+ * back to back. At most {@code load.concurrency} requests are in flight in
+ * either mode.
+ *
+ * <p>Latencies go into one HDR histogram per operation. A summary is logged
+ * at the end and the full report is written as JSON to
+ * {@code load.results-file}.
+ */
+@Component
+public class LoadGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    enum Operation { STORE, LOAD, STORE_INVALID }
+
+    @Value("${load.enabled:false}") boolean enabled = false;
+
+    @Value("${load.concurrency:16}") int concurrency = 16;
+
+    @Value("${load.virtual-threads:true}") boolean virtualThreads = true;
+
+    /** Weights of the operations, e.g. {@code store:1,load:4,store_invalid:0}. */
+    @Value("${load.mix:store:1,load:4}") String mix = "store:1,load:4";
+
+    /** Payload sizes in bytes with their weights, e.g. {@code 1024:60,65536:30,1048576:10}. */
+    @Value("${load.payload-sizes:1024:60,65536:30,1048576:10}") String payloadSizes = "1024:60,65536:30,1048576:10";
+
+    /** Target requests per second; 0 runs closed-loop. */
+    @Value("${load.rate:0}") double rate = 0;
+
+    @Value("${load.duration:PT30S}") Duration duration = Duration.ofSeconds(30);
+
+    /** Distinct names that stores overwrite and loads read; keep their total size under the server quota. */
+    @Value("${load.name-count:4}") int nameCount = 4;
+
+    @Value("${load.results-file:load-results.json}") String resultsFile = "load-results.json";
+
+    private final SaajMtomClient client;
+    private final Map<Operation, OperationRecorder> recorders = new EnumMap<>(Operation.class);
+
+    private WeightedChoice<Operation> operations;
+    private WeightedChoice<byte[]> payloads;
+
+    public LoadGenerator(@Qualifier("saajClient") SaajMtomClient client) {
+        this.client = client;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public LoadReport run() throws IOException, InterruptedException {
+        operations = WeightedChoice.parse(mix, key -> Operation.valueOf(key.toUpperCase(Locale.ROOT)));
+        payloads = WeightedChoice.parse(payloadSizes, key -> randomPayload(Integer.parseInt(key)));
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new OperationRecorder());
+        }
+
+        logger.info("Load test: concurrency={}, virtualThreads={}, mix={}, sizes={}, rate={}, duration={}",
+                concurrency, virtualThreads, mix, payloadSizes, rate > 0 ? rate + "/s" : "closed-loop", duration);
+        prepopulate();
+
+        Instant startedAt = Instant.now();
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        Semaphore inFlight = new Semaphore(concurrency);
+        ExecutorService executor = virtualThreads
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(concurrency);
+        try {
+            if (rate > 0) {
+                runOpenLoop(executor, inFlight, start, end);
+            } else {
+                runClosedLoop(executor, end);
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(duration.toMillis() + TimeUnit.MINUTES.toMillis(1), TimeUnit.MILLISECONDS);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        LoadReport report = report(startedAt, elapsed);
+        logSummary(report);
+        new ObjectMapper().writerWithDefaultPrettyPrinter()
+                .writeValue(Path.of(resultsFile).toFile(), report);
+        logger.info("Results written to {}", Path.of(resultsFile).toAbsolutePath());
+        return report;
+    }
+
+    /** Makes sure every name exists before loads start. */
+    private void prepopulate() {
+        for (int i = 0; i < nameCount; i++) {
+            client.store(contentName(i), new DataHandler(new BytesDataSource(payloads.next(new Random(i)))));
+        }
+    }
+
+    private void runOpenLoop(ExecutorService executor, Semaphore inFlight, long start, long end) {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        for (long i = 0;; i++) {
+            long scheduled = start + i * interval;
+            if (scheduled - end >= 0) {
+                return;
+            }
+            parkUntil(scheduled);
+            executor.execute(() -> {
+                inFlight.acquireUninterruptibly();
+                try {
+                    execute(scheduled);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+    }
+
+    private void runClosedLoop(ExecutorService executor, long end) {
+        for (int worker = 0; worker < concurrency; worker++) {
+            executor.execute(() -> {
+                long now;
+                while ((now = System.nanoTime()) - end < 0) {
+                    execute(now);
+                }
+            });
+        }
+    }
+
+    private void execute(long scheduled) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Operation operation = operations.next(random);
+        boolean success;
+        try {
+            switch (operation) {
+                case STORE -> client.store(contentName(random.nextInt(nameCount)),
+                        new DataHandler(new BytesDataSource(payloads.next(random))));
+                case LOAD -> client.load(contentName(random.nextInt(nameCount)));
+                case STORE_INVALID -> client.store("плохойЖ-" + random.nextInt(nameCount),
+                        new DataHandler(new BytesDataSource(payloads.next(random))));
+            }
+            success = operation != Operation.STORE_INVALID;
+        } catch (SoapFaultClientException e) {
+            success = operation == Operation.STORE_INVALID;
+            if (!success) {
+                logger.debug("{} failed: {}", operation, e.getFaultStringOrReason());
+            }
+        } catch (Exception e) {
+            success = false;
+            logger.debug("{} failed", operation, e);
+        }
+        recorders.get(operation).record(System.nanoTime() - scheduled, success);
+    }
+
+    private LoadReport report(Instant startedAt, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        Map<String, LoadReport.OperationStats> stats = new LinkedHashMap<>();
+        Histogram total = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+        long totalErrors = 0;
+        for (Map.Entry<Operation, OperationRecorder> entry : recorders.entrySet()) {
+            OperationRecorder recorder = entry.getValue();
+            if (recorder.histogram.getTotalCount() == 0) {
+                continue;
+            }
+            stats.put(entry.getKey().name().toLowerCase(Locale.ROOT), recorder.stats(seconds));
+            total.add(recorder.histogram);
+            totalErrors += recorder.errors.sum();
+        }
+        stats.put("total", LoadReport.OperationStats.of(total, totalErrors, seconds));
+        return new LoadReport(startedAt.toString(), seconds, concurrency, virtualThreads, mix, payloadSizes,
+                rate, stats);
+    }
+
+    private void logSummary(LoadReport report) {
+        StringBuilder summary = new StringBuilder(String.format(Locale.ROOT,
+                "%n%-14s %9s %7s %10s %10s %10s %10s %10s%n",
+                "operation", "count", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        report.operations().forEach((name, stats) -> summary.append(String.format(Locale.ROOT,
+                "%-14s %9d %7d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                name, stats.count(), stats.errors(), stats.throughput(),
+                stats.p50Millis(), stats.p99Millis(), stats.p999Millis(), stats.maxMillis())));
+        logger.info("Load test finished in {} s:{}", String.format(Locale.ROOT, "%.1f", report.elapsedSeconds()),
+                summary);
+    }
+
+    private static String contentName(int index) {
+        return "load-" + index;
+    }
+
+    private static byte[] randomPayload(int size) {
+        byte[] payload = new byte[size];
+        new Random(size).nextBytes(payload);
+        if (size > 0) {
+            payload[0] = (byte) 0xFF; // never valid JSON, so the server accepts it
+        }
+        return payload;
+    }
+
+    private static void parkUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /** Latency histogram and error count of one operation. */
+    private static final class OperationRecorder {
+
+        private final ConcurrentHistogram histogram = new ConcurrentHistogram(HIGHEST_TRACKABLE_NANOS, 3);
+        private final LongAdder errors = new LongAdder();
+
+        void record(long latencyNanos, boolean success) {
+            histogram.recordValue(Math.min(latencyNanos, HIGHEST_TRACKABLE_NANOS));
+            if (!success) {
+                errors.increment();
+            }
+        }
+
+        LoadReport.OperationStats stats(double seconds) {
+            return LoadReport.OperationStats.of(histogram, errors.sum(), seconds);
+        }
+    }
+
+    /** Picks values at random in proportion to their weights, parsed from {@code key:weight,...}. */
+    private record WeightedChoice<T>(List<T> values, long[] cumulativeWeights) {
+
+        static <T> WeightedChoice<T> parse(String spec, Function<String, T> valueOf) {
+            List<T> values = new ArrayList<>();
+            List<Long> cumulative = new ArrayList<>();
+            long total = 0;
+            for (String item : spec.split(",")) {
+                int colon = item.lastIndexOf(':');
+                if (colon < 0) {
+                    throw new IllegalArgumentException("Expected key:weight, got '" + item + "' in " + spec);
+                }
+                long weight = Long.parseLong(item.substring(colon + 1).trim());
+                if (weight > 0) {
+                    total += weight;
+                    values.add(valueOf.apply(item.substring(0, colon).trim()));
+                    cumulative.add(total);
+                }
+            }
+            if (values.isEmpty()) {
+                throw new IllegalArgumentException("No positive weights in " + spec);
+            }
+            return new WeightedChoice<>(values, cumulative.stream().mapToLong(Long::longValue).toArray());
+        }
+
+        T next(Random random) {
+            long pick = random.nextLong(cumulativeWeights[cumulativeWeights.length - 1]);
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (pick < cumulativeWeights[i]) {
+                    return values.get(i);
+                }
+            }
+            throw new IllegalStateException();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.viking.client;
+
+import java.util.Map;
+
+import org.HdrHistogram.AbstractHistogram;
+
+/** Result of a {@link LoadGenerator} run, written out as JSON. */
+public record LoadReport(
+        String startedAt,
+        double elapsedSeconds,
+        int concurrency,
+        boolean virtualThreads,
+        String mix,
+        String payloadSizes,
+        double targetRate,
+        Map<String, OperationStats> operations) {
+
+    /** Latencies are measured from the scheduled start of each request. */
+    public record OperationStats(
+            long count,
+            long errors,
+            double throughput,
+            double meanMillis,
+            double p50Millis,
+            double p90Millis,
+            double p99Millis,
+            double p999Millis,
+            double maxMillis) {
+
+        static OperationStats of(AbstractHistogram histogram, long errors, double seconds) {
+            return new OperationStats(
+                    histogram.getTotalCount(),
+                    errors,
+                    histogram.getTotalCount() / seconds,
+                    histogram.getMean() / 1e6,
+                    millis(histogram, 50),
+                    millis(histogram, 90),
+                    millis(histogram, 99),
+                    millis(histogram, 99.9),
+                    histogram.getMaxValue() / 1e6);
+        }
+
+        private static double millis(AbstractHistogram histogram, double percentile) {
+            return histogram.getValueAtPercentile(percentile) / 1e6;
+        }
+    }
+}
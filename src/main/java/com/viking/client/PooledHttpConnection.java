@@ -0,0 +1,161 @@
+package com.viking.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.transport.http.AbstractHttpSenderConnection;
+import org.springframework.ws.transport.http.HttpTransportConstants;
+
+/**
+ * One exchange of a {@link PooledHttpMessageSender}. The request is written
+ * to a buffer, as with the other Spring WS senders, and sent when the
+ * message is complete; the response body is read as a stream. Closing the
+ * connection closes that stream, which hands the connection back to the
+ * pool, and frees the route slot. A send that fails frees the slot at once.
+ */
+class PooledHttpConnection extends AbstractHttpSenderConnection {
+
+    // set by the JDK client itself
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host",
+            "upgrade");
+
+    private final HttpClient httpClient;
+    private final URI uri;
+    private final Semaphore route;
+    private final Duration requestTimeout;
+    private final HttpRequest.Builder requestBuilder;
+
+    private RequestBuffer requestBuffer;
+    private HttpResponse<InputStream> response;
+    private boolean routeAcquired;
+
+    PooledHttpConnection(HttpClient httpClient, URI uri, Duration requestTimeout, boolean acceptGzipEncoding,
+            Semaphore route) {
+        this.httpClient = httpClient;
+        this.uri = uri;
+        this.route = route;
+        this.requestTimeout = requestTimeout;
+        this.requestBuilder = HttpRequest.newBuilder(uri).timeout(requestTimeout);
+        if (acceptGzipEncoding) {
+            requestBuilder.header(HttpTransportConstants.HEADER_ACCEPT_ENCODING,
+                    HttpTransportConstants.CONTENT_ENCODING_GZIP);
+        }
+    }
+
+    @Override
+    public URI getUri() {
+        return uri;
+    }
+
+    @Override
+    protected void onSendBeforeWrite(WebServiceMessage message) {
+        requestBuffer = new RequestBuffer();
+    }
+
+    @Override
+    protected void addRequestHeader(String name, String value) {
+        if (!RESTRICTED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+            requestBuilder.header(name, value);
+        }
+    }
+
+    @Override
+    protected OutputStream getRequestOutputStream() {
+        return requestBuffer;
+    }
+
+    @Override
+    protected void onSendAfterWrite(WebServiceMessage message) throws IOException {
+        HttpRequest request = requestBuilder.POST(requestBuffer.publisher()).build();
+        try {
+            if (!route.tryAcquire(requestTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new IOException("No free connection to " + uri.getAuthority() + " within " + requestTimeout);
+            }
+            routeAcquired = true;
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while sending to " + uri);
+        } finally {
+            requestBuffer = null;
+            if (response == null) {
+                releaseRoute();
+            }
+        }
+    }
+
+    @Override
+    protected int getResponseCode() {
+        return response.statusCode();
+    }
+
+    @Override
+    protected String getResponseMessage() {
+        // HTTP/2 has no reason phrase, and the JDK client does not expose the HTTP/1.1 one
+        return "HTTP " + response.statusCode();
+    }
+
+    @Override
+    protected long getResponseContentLength() {
+        return response.headers().firstValueAsLong(HttpTransportConstants.HEADER_CONTENT_LENGTH).orElse(-1);
+    }
+
+    @Override
+    protected InputStream getRawResponseInputStream() {
+        return response.body();
+    }
+
+    @Override
+    protected Iterator<String> getResponseHeaderNames() {
+        return response.headers().map().keySet().iterator();
+    }
+
+    @Override
+    protected Iterator<String> getResponseHeaders(String name) {
+        return response.headers().allValues(name).iterator();
+    }
+
+    @Override
+    protected void onClose() throws IOException {
+        try {
+            if (response != null) {
+                response.body().close();
+            }
+        } finally {
+            releaseRoute();
+        }
+    }
+
+    private void releaseRoute() {
+        if (routeAcquired) {
+            routeAcquired = false;
+            route.release();
+        }
+    }
+
+    /** Hands its array to the request without copying it. */
+    private static final class RequestBuffer extends ByteArrayOutputStream {
+
+        RequestBuffer() {
+            super(8192);
+        }
+
+        HttpRequest.BodyPublisher publisher() {
+            return HttpRequest.BodyPublishers.ofByteArray(buf, 0, count);
+        }
+    }
+}
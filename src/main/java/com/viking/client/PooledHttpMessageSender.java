@@ -0,0 +1,61 @@
+package com.viking.client;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import org.springframework.ws.transport.WebServiceConnection;
+import org.springframework.ws.transport.http.AbstractHttpWebServiceMessageSender;
+
+/**
+ * Sends SOAP messages with the JDK {@link HttpClient}.
+ *
+ * <p>One client is shared by every request, so connections are pooled and
+ * kept alive between calls. HTTP/2 is used where the server offers it:
+ * negotiated with ALPN over TLS, or by an upgrade over plain HTTP that
+ * falls back to HTTP/1.1 when the server does not take it. At most
+ * {@code maxConnectionsPerRoute} exchanges run against one host at once;
+ * callers beyond that wait for a slot, up to the request timeout, rather
+ * than opening more connections.
+ *
+ * <p>How long idle connections are kept is up to the JDK client, which
+ * reads it once per JVM from the {@code jdk.httpclient.keepalive.timeout}
+ * system property (in seconds). Set it on the command line, e.g.
+ * {@code -Djdk.httpclient.keepalive.timeout=30}, to change it.
+ */
+public class PooledHttpMessageSender extends AbstractHttpWebServiceMessageSender {
+
+    public record Settings(int maxConnectionsPerRoute, Duration connectTimeout, Duration requestTimeout,
+            HttpClient.Version version) {
+    }
+
+    private final Settings settings;
+    private final HttpClient httpClient;
+    private final Map<String, Semaphore> routes = new ConcurrentHashMap<>();
+
+    public PooledHttpMessageSender(Settings settings) {
+        this.settings = settings;
+        this.httpClient = HttpClient.newBuilder()
+                .version(settings.version())
+                .connectTimeout(settings.connectTimeout())
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    public Settings settings() {
+        return settings;
+    }
+
+    @Override
+    public WebServiceConnection createConnection(URI uri) throws IOException {
+        Semaphore route = routes.computeIfAbsent(uri.getScheme() + "://" + uri.getAuthority(),
+                key -> new Semaphore(settings.maxConnectionsPerRoute(), true));
+        return new PooledHttpConnection(httpClient, uri, settings.requestTimeout(), isAcceptGzipEncoding(), route);
+    }
+}
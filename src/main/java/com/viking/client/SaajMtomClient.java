@@ -5,6 +5,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,6 +20,9 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.util.ClassUtils;
 import org.springframework.util.StopWatch;
 import org.springframework.ws.client.core.support.WebServiceGatewaySupport;
+import org.springframework.ws.samples.mtom.schema.ContentEntry;
+import org.springframework.ws.samples.mtom.schema.ListContentRequest;
+import org.springframework.ws.samples.mtom.schema.ListContentResponse;
 import org.springframework.ws.samples.mtom.schema.LoadContentRequest;
 import org.springframework.ws.samples.mtom.schema.LoadContentResponse;
 import org.springframework.ws.samples.mtom.schema.ObjectFactory;
@@ -35,8 +42,16 @@ public class SaajMtomClient extends WebServiceGatewaySupport{
     }
 
     @Bean
-    CommandLineRunner invoke(SaajMtomClient saajClient) {
+    CommandLineRunner invoke(SaajMtomClient saajClient, LoadGenerator loadGenerator, BulkTransfer bulkTransfer) {
         return args -> {
+            if (loadGenerator.isEnabled()) {
+                loadGenerator.run();
+                return;
+            }
+            if (bulkTransfer.isEnabled()) {
+                bulkTransfer.run();
+                return;
+            }
             saajClient.storeInvalidFile();
             saajClient.storeContent();
             saajClient.loadContent();
@@ -87,6 +102,70 @@ public class SaajMtomClient extends WebServiceGatewaySupport{
         logger.info(this.stopWatch.prettyPrint());
     }
 
+    /** Stores {@code content} under {@code name}, letting faults propagate. */
+    public void store(String name, DataHandler content) {
+        StoreContentRequest request = this.objectFactory.createStoreContentRequest();
+        request.setName(name);
+        request.setContent(content);
+        getWebServiceTemplate().marshalSendAndReceive(request);
+    }
+
+    /** Loads {@code name} and reads the whole attachment, returning its size. */
+    public long load(String name) throws IOException {
+        LoadContentRequest request = this.objectFactory.createLoadContentRequest();
+        request.setName(name);
+        LoadContentResponse response = (LoadContentResponse) getWebServiceTemplate().marshalSendAndReceive(request);
+        try (InputStream in = response.getContent().getInputStream()) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    /**
+     * Loads {@code name} into {@code file}, through a partial file next to it
+     * so that a failed transfer leaves no truncated file. Returns the size.
+     */
+    public long loadTo(String name, Path file) throws IOException {
+        LoadContentRequest request = this.objectFactory.createLoadContentRequest();
+        request.setName(name);
+        LoadContentResponse response = (LoadContentResponse) getWebServiceTemplate().marshalSendAndReceive(request);
+        Files.createDirectories(file.getParent());
+        Path partial = file.resolveSibling(file.getFileName() + ".part");
+        long size;
+        try (InputStream in = response.getContent().getInputStream()) {
+            size = Files.copy(in, partial, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING);
+        return size;
+    }
+
+    /** Stored names starting with {@code prefix}, in name order. */
+    public List<ContentEntry> list(String prefix) {
+        ListContentRequest request = this.objectFactory.createListContentRequest();
+        request.setPrefix(prefix);
+        return ((ListContentResponse) getWebServiceTemplate().marshalSendAndReceive(request)).getEntry();
+    }
+
+    /**
+     * Loads {@code name} unless the server still holds the content with
+     * {@code knownDigest}, reading the attachment only if one is sent.
+     * Returns the current digest, to pass in on the next poll.
+     */
+    public String loadIfModified(String name, String knownDigest) throws IOException {
+        LoadContentRequest request = this.objectFactory.createLoadContentRequest();
+        request.setName(name);
+        request.setIfNoneMatch(knownDigest);
+        LoadContentResponse response = (LoadContentResponse) getWebServiceTemplate().marshalSendAndReceive(request);
+        if (!Boolean.TRUE.equals(response.isNotModified())) {
+            try (InputStream in = response.getContent().getInputStream()) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+        }
+        return response.getDigest();
+    }
+
     private static long saveContentToFile(DataHandler content, File outFile) throws IOException {
         long size = 0;
         byte[] buffer = new byte[1024];
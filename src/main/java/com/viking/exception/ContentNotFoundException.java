@@ -0,0 +1,7 @@
+package com.viking.exception;
+
+public class ContentNotFoundException extends Exception {
+    public ContentNotFoundException(String name) {
+        super("Content not found: " + name);
+    }
+}
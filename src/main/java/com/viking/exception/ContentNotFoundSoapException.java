@@ -0,0 +1,11 @@
+package com.viking.exception;
+
+import org.springframework.ws.soap.server.endpoint.annotation.FaultCode;
+import org.springframework.ws.soap.server.endpoint.annotation.SoapFault;
+
+@SoapFault(faultCode = FaultCode.CLIENT)
+public class ContentNotFoundSoapException extends RuntimeException {
+    public ContentNotFoundSoapException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,22 @@
+package com.viking.exception;
+
+/** A transfer was turned away because the server is at its admission limits. */
+public class ServerBusyException extends Exception {
+
+    /** Why the transfer was not admitted, used to break down rejection metrics. */
+    public enum Reason {
+        QUEUE_FULL,
+        TIMEOUT
+    }
+
+    private final Reason reason;
+
+    public ServerBusyException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
@@ -1,7 +1,31 @@
 package com.viking.exception;
 
 public class ValidationException extends Exception {
+
+    /** Why content was rejected, used to break down rejection metrics. */
+    public enum Reason {
+        FILE_NAME,
+        FILE_SIZE,
+        JSON_CONTENT,
+        UNREADABLE_CONTENT,
+        QUOTA,
+        UPLOAD_PROTOCOL,
+        VERSION_CONFLICT,
+        OTHER
+    }
+
+    private final Reason reason;
+
     public ValidationException(String message) {
+        this(Reason.OTHER, message);
+    }
+
+    public ValidationException(Reason reason, String message) {
         super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
     }
 }
@@ -0,0 +1,18 @@
+package com.viking.exception;
+
+/** A conditional store found a different version than the one it required. */
+public class VersionConflictException extends ValidationException {
+
+    private final long currentVersion;
+
+    public VersionConflictException(String name, long expectedVersion, long currentVersion) {
+        super(Reason.VERSION_CONFLICT, String.format("Version conflict for %s: expected %d, current %d",
+                name, expectedVersion, currentVersion));
+        this.currentVersion = currentVersion;
+    }
+
+    /** Version stored when the store was attempted, 0 if the name was not stored. */
+    public long getCurrentVersion() {
+        return currentVersion;
+    }
+}
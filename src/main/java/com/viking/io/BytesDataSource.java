@@ -0,0 +1,31 @@
+package com.viking.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import jakarta.activation.DataSource;
+
+/** Read-only content already held in memory, to hand to a {@link jakarta.activation.DataHandler}. */
+public record BytesDataSource(byte[] data) implements DataSource {
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(data);
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/octet-stream";
+    }
+
+    @Override
+    public String getName() {
+        return "bytes";
+    }
+}
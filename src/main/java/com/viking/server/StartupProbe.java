@@ -0,0 +1,109 @@
+package com.viking.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.stream.Stream;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Starts the server on a free port, sends it one {@code StoreContent} and
+ * stops it again, reporting how long that took.
+ *
+ * <p>The request is plain SOAP with the content inline, sent with
+ * {@link HttpURLConnection}, so the probe itself loads next to nothing
+ * beyond what the server needs. Run as a main class it reports the time
+ * since the JVM started, which is what an AOT cache or CDS archive
+ * improves; the {@code fast-startup} build profile also uses it as the
+ * training run for such a cache. Extra arguments are passed on to the
+ * application.
+ */
+public final class StartupProbe {
+
+    private static final String REQUEST = "<soapenv:Envelope"
+            + " xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body>"
+            + "<tns:StoreContentRequest xmlns:tns=\"http://viking/soap/mtom/lab2025\">"
+            + "<tns:Name>startup-probe</tns:Name><tns:Content>%s</tns:Content>"
+            + "</tns:StoreContentRequest></soapenv:Body></soapenv:Envelope>";
+
+    /**
+     * {@code contextStartup} is the time to a running context,
+     * {@code firstStore} the time from there to a successful response.
+     */
+    public record Result(Duration contextStartup, Duration firstStore) {
+
+        public Duration total() {
+            return contextStartup.plus(firstStore);
+        }
+    }
+
+    private StartupProbe() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Result result = run(args);
+        long sinceJvmStart = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.printf("First StoreContent %d ms after JVM start (context %d ms, first store %d ms)%n",
+                sinceJvmStart, result.contextStartup().toMillis(), result.firstStore().toMillis());
+    }
+
+    public static Result run(String... args) throws IOException {
+        Path storeRoot = Files.createTempDirectory("startup-probe");
+        String[] arguments = Stream.concat(
+                Stream.of("--server.port=0", "--content.store.root=" + storeRoot, "--spring.main.banner-mode=off"),
+                Arrays.stream(args)).toArray(String[]::new);
+        long started = System.nanoTime();
+        ConfigurableApplicationContext context = SpringApplication.run(SoapServiceApplication.class, arguments);
+        try {
+            long ready = System.nanoTime();
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            storeOnce(URI.create("http://localhost:" + port + "/mtom-server/services"));
+            return new Result(Duration.ofNanos(ready - started), Duration.ofNanos(System.nanoTime() - ready));
+        } finally {
+            context.close();
+            FileSystemUtils.deleteRecursively(storeRoot);
+        }
+    }
+
+    private static void storeOnce(URI uri) throws IOException {
+        byte[] content = new byte[1024];
+        Arrays.fill(content, (byte) 0xFF); // never valid JSON, so the server accepts it
+        byte[] body = String.format(REQUEST, Base64.getEncoder().encodeToString(content))
+                .getBytes(StandardCharsets.UTF_8);
+
+        HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", "text/xml; charset=utf-8");
+            connection.setRequestProperty("SOAPAction", "\"\"");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            int status = connection.getResponseCode();
+            String response;
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                response = in != null ? new String(in.readAllBytes(), StandardCharsets.UTF_8) : "";
+            }
+            if (status != HttpURLConnection.HTTP_OK || !response.contains("StoreContentResponse")) {
+                throw new IOException("StoreContent failed with HTTP " + status + ": " + response);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.viking.server.admission;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.viking.exception.ServerBusyException;
+import com.viking.exception.ServerBusyException.Reason;
+import com.viking.server.metrics.ContentMetrics;
+
+/**
+ * Bounds the transfers the server works on at once, both by count and by
+ * the bytes they carry.
+ *
+ * <p>Each transfer needs one slot and a share of the byte budget equal to
+ * its size. Both come from fair semaphores, so waiting transfers are
+ * admitted in arrival order and a large upload cannot be starved by a
+ * stream of small ones. A transfer waits at most the queue timeout, and
+ * when the queue is already full it is turned away at once, so overload
+ * shows up as quick rejections rather than as heap growth and latency.
+ */
+public class AdmissionController {
+
+    /** Budget granularity; sizes are rounded up to whole units. */
+    private static final int BYTES_PER_PERMIT = 1024;
+
+    public record Limits(int maxTransfers, long maxInFlightBytes, int maxQueued, Duration queueTimeout) {
+    }
+
+    private final Limits limits;
+    private final int bytePermits;
+    private final Semaphore transfers;
+    private final Semaphore bytes;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final ContentMetrics metrics;
+
+    public AdmissionController(Limits limits, ContentMetrics metrics) {
+        this.limits = limits;
+        this.bytePermits = (int) Math.min(Integer.MAX_VALUE,
+                Math.max(1, limits.maxInFlightBytes() / BYTES_PER_PERMIT));
+        this.transfers = new Semaphore(limits.maxTransfers(), true);
+        this.bytes = new Semaphore(bytePermits, true);
+        this.metrics = metrics;
+        metrics.registerAdmissionGauges(queued::get, this::activeTransfers, this::inFlightBytes);
+    }
+
+    public Limits limits() {
+        return limits;
+    }
+
+    /**
+     * Waits until a transfer of {@code size} bytes fits, in arrival order.
+     * Transfers larger than the whole budget are charged the whole budget,
+     * so they run alone rather than never. Closing the returned admission
+     * gives its share back.
+     */
+    public Admission admit(long size) throws ServerBusyException {
+        int permits = (int) Math.min(bytePermits, Math.max(1, Math.ceilDiv(size, BYTES_PER_PERMIT)));
+        if (queued.incrementAndGet() > limits.maxQueued()) {
+            queued.decrementAndGet();
+            throw reject(Reason.QUEUE_FULL, "Too many transfers waiting for admission");
+        }
+        long started = System.nanoTime();
+        long timeout = limits.queueTimeout().toNanos();
+        try {
+            if (!transfers.tryAcquire(timeout, TimeUnit.NANOSECONDS)) {
+                throw reject(Reason.TIMEOUT, "No transfer slot within " + limits.queueTimeout());
+            }
+            long remaining = timeout - (System.nanoTime() - started);
+            if (!bytes.tryAcquire(permits, remaining, TimeUnit.NANOSECONDS)) {
+                transfers.release();
+                throw reject(Reason.TIMEOUT, "No room for " + size + " in-flight bytes within "
+                        + limits.queueTimeout());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw reject(Reason.TIMEOUT, "Interrupted while waiting for admission");
+        } finally {
+            queued.decrementAndGet();
+            metrics.recordAdmissionWait(System.nanoTime() - started);
+        }
+        return new Admission(permits);
+    }
+
+    int queued() {
+        return queued.get();
+    }
+
+    int activeTransfers() {
+        return limits.maxTransfers() - transfers.availablePermits();
+    }
+
+    long inFlightBytes() {
+        return (long) (bytePermits - bytes.availablePermits()) * BYTES_PER_PERMIT;
+    }
+
+    private ServerBusyException reject(Reason reason, String message) {
+        metrics.recordAdmissionRejection(reason);
+        return new ServerBusyException(reason, message);
+    }
+
+    /** An admitted transfer; closing it, once or more, ends the transfer. */
+    public final class Admission implements AutoCloseable {
+
+        private final int permits;
+        private boolean closed;
+
+        private Admission(int permits) {
+            this.permits = permits;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                bytes.release(permits);
+                transfers.release();
+            }
+        }
+    }
+}
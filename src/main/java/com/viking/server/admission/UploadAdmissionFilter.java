@@ -0,0 +1,101 @@
+package com.viking.server.admission;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.oxm.Marshaller;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.ws.samples.mtom.schema.ObjectFactory;
+import org.springframework.ws.samples.mtom.schema.ServerBusy;
+import org.springframework.ws.soap.SoapFault;
+import org.springframework.ws.soap.SoapMessage;
+import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
+
+import com.viking.exception.ServerBusyException;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Admits SOAP uploads through an {@link AdmissionController} before the
+ * message dispatcher reads them.
+ *
+ * <p>It has to sit in front of the servlet: by the time an endpoint runs,
+ * SAAJ has already read the whole MTOM message. A request is charged its
+ * {@code Content-Length}, or the size of a full upload when the length is
+ * not known. Requests smaller than {@code minBytes}, such as loads, pass
+ * without admission. Rejected requests get a SOAP {@code Server} fault with
+ * a {@code ServerBusy} detail and a {@code Retry-After} header, without the
+ * body being read. The fault is built as a SAAJ message and the detail
+ * marshalled from the schema class, like the faults of the endpoints.
+ */
+public class UploadAdmissionFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadAdmissionFilter.class);
+
+    /** What a request of unknown length is charged: a full 3 MB upload, base64 and envelope included. */
+    static final long UNKNOWN_LENGTH_BYTES = 4 * 1024 * 1024;
+
+    private final AdmissionController admissionController;
+    private final long minBytes;
+    private final Marshaller marshaller;
+    private final SaajSoapMessageFactory faultFactory = new SaajSoapMessageFactory();
+    private final ObjectFactory objectFactory = new ObjectFactory();
+
+    public UploadAdmissionFilter(AdmissionController admissionController, long minBytes, Marshaller marshaller) {
+        this.admissionController = admissionController;
+        this.minBytes = minBytes;
+        this.marshaller = marshaller;
+        this.faultFactory.afterPropertiesSet();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!"POST".equals(request.getMethod())) {
+            return true;
+        }
+        long length = request.getContentLengthLong();
+        return length >= 0 && length < minBytes;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long length = request.getContentLengthLong();
+        AdmissionController.Admission admission;
+        try {
+            admission = admissionController.admit(length >= 0 ? length : UNKNOWN_LENGTH_BYTES);
+        } catch (ServerBusyException e) {
+            log.debug("Rejected upload of {} bytes: {}", length, e.getMessage());
+            writeBusyFault(response, e);
+            return;
+        }
+        try (admission) {
+            chain.doFilter(request, response);
+        }
+    }
+
+    private void writeBusyFault(HttpServletResponse response, ServerBusyException e) throws IOException {
+        int retryAfter = (int) Math.max(1, admissionController.limits().queueTimeout().toSeconds());
+        SoapMessage message = faultFactory.createWebServiceMessage();
+        SoapFault fault = message.getSoapBody().addServerOrReceiverFault("Server busy: " + e.getMessage(),
+                Locale.ENGLISH);
+        ServerBusy detail = objectFactory.createServerBusy();
+        detail.setRetryAfterSeconds(retryAfter);
+        marshaller.marshal(detail, fault.addFaultDetail().getResult());
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        message.writeTo(body);
+
+        // SOAP 1.1 over HTTP reports every fault as 500; Retry-After tells clients it is transient
+        response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        response.setHeader("Retry-After", Integer.toString(retryAfter));
+        response.setContentType("text/xml;charset=UTF-8");
+        response.setContentLength(body.size());
+        body.writeTo(response.getOutputStream());
+    }
+}
@@ -1,22 +1,50 @@
 package com.viking.server.config;
 
+import java.time.Duration;
 import java.util.Collections;
+import java.util.Map;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.boot.web.servlet.ServletRegistrationBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.Ordered;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.lang.NonNull;
 import org.springframework.oxm.jaxb.Jaxb2Marshaller;
 import org.springframework.ws.server.endpoint.adapter.DefaultMethodEndpointAdapter;
+import org.springframework.ws.server.endpoint.adapter.MessageEndpointAdapter;
 import org.springframework.ws.server.endpoint.adapter.method.MarshallingPayloadMethodProcessor;
+import org.springframework.ws.soap.axiom.AxiomSoapMessageFactory;
 import org.springframework.ws.transport.http.MessageDispatcherServlet;
 import org.springframework.ws.wsdl.wsdl11.SimpleWsdl11Definition;
 
+import com.viking.server.admission.AdmissionController;
+import com.viking.server.admission.UploadAdmissionFilter;
+import com.viking.server.metrics.ContentMetrics;
+import com.viking.server.service.CachingContentRepository;
+import com.viking.server.service.ContentRepository;
+import com.viking.server.service.ContentRepositoryImpl;
+import com.viking.server.ws.ContentBatchExecutor;
+import com.viking.server.ws.ContentMetricsInterceptor;
+import com.viking.server.ws.StreamingPayloadRootEndpointMapping;
+import com.viking.server.ws.StreamingStoreContentEndpoint;
+import com.viking.server.ws.TimedMarshallingPayloadMethodProcessor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
 @Configuration
 public class ServerConfiguration {
 
+    private static final Logger log = LoggerFactory.getLogger(ServerConfiguration.class);
+
     @Bean
     ServletRegistrationBean<?> webServiceRegistration(@NonNull ApplicationContext context) {
         MessageDispatcherServlet messageDispatcherServlet = new MessageDispatcherServlet();
@@ -26,17 +54,67 @@ public class ServerConfiguration {
         return new ServletRegistrationBean<>(messageDispatcherServlet, "/mtom-server/*");
     }
 
+    /**
+     * Admission control for uploads, ahead of the message dispatcher. Limits
+     * in-flight transfers by count and bytes; see {@link AdmissionController}.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "content.admission.enabled", havingValue = "true", matchIfMissing = true)
+    FilterRegistrationBean<UploadAdmissionFilter> uploadAdmissionFilter(ContentMetrics contentMetrics,
+            Jaxb2Marshaller marshaller,
+            @Value("${content.admission.max-transfers:64}") int maxTransfers,
+            @Value("${content.admission.max-in-flight-bytes:268435456}") long maxInFlightBytes,
+            @Value("${content.admission.max-queued:256}") int maxQueued,
+            @Value("${content.admission.queue-timeout:PT5S}") Duration queueTimeout,
+            @Value("${content.admission.min-bytes:16384}") long minBytes) {
+        AdmissionController.Limits limits =
+                new AdmissionController.Limits(maxTransfers, maxInFlightBytes, maxQueued, queueTimeout);
+        AdmissionController admissionController = new AdmissionController(limits, contentMetrics);
+        FilterRegistrationBean<UploadAdmissionFilter> registration = new FilterRegistrationBean<>(
+                new UploadAdmissionFilter(admissionController, minBytes, marshaller), "/mtom-server/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    /** The JAXB context is not built during context refresh; see {@link #jaxbContextWarmup}. */
     @Bean
     public Jaxb2Marshaller marshaller() {
         Jaxb2Marshaller marshaller = new Jaxb2Marshaller();
         marshaller.setContextPath("org.springframework.ws.samples.mtom.schema");
         marshaller.setMtomEnabled(true);
+        marshaller.setLazyInit(true);
         return marshaller;
     }
 
+    /**
+     * Builds the JAXB context in the background once every singleton has
+     * been created, so startup does not wait for it; a request that needs it
+     * before it is done waits for it instead.
+     */
+    @Bean
+    SmartInitializingSingleton jaxbContextWarmup(Jaxb2Marshaller marshaller) {
+        return () -> Thread.ofPlatform().daemon().name("jaxb-context-warmup").start(() -> {
+            try {
+                marshaller.getJaxbContext();
+            } catch (RuntimeException e) {
+                log.warn("JAXB context warm-up failed; it is built again on first use", e);
+            }
+        });
+    }
+
     @Bean
-    public MarshallingPayloadMethodProcessor methodProcessor(Jaxb2Marshaller marshaller) {
-        return new MarshallingPayloadMethodProcessor(marshaller);
+    public ContentMetrics contentMetrics(MeterRegistry meterRegistry) {
+        return new ContentMetrics(meterRegistry);
+    }
+
+    @Bean
+    public MarshallingPayloadMethodProcessor methodProcessor(Jaxb2Marshaller marshaller, ContentMetrics contentMetrics) {
+        return new TimedMarshallingPayloadMethodProcessor(marshaller, marshaller, contentMetrics);
+    }
+
+    @Bean
+    public ContentMetricsInterceptor contentMetricsInterceptor(ContentMetrics contentMetrics) {
+        return new ContentMetricsInterceptor(contentMetrics);
     }
 
     @Bean
@@ -47,6 +125,68 @@ public class ServerConfiguration {
         return adapter;
     }
 
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "content.cache.enabled", havingValue = "true", matchIfMissing = true)
+    public CachingContentRepository cachingContentRepository(ContentRepositoryImpl contentRepositoryImpl,
+            @Value("${content.cache.max-bytes:67108864}") long maxBytes,
+            @Value("${content.cache.max-entry-bytes:4194304}") long maxEntryBytes) {
+        CachingContentRepository cache = new CachingContentRepository(contentRepositoryImpl, maxBytes, maxEntryBytes);
+        contentRepositoryImpl.setEvictionListener(cache::invalidate);
+        return cache;
+    }
+
+    @Bean
+    public ContentBatchExecutor contentBatchExecutor(@Value("${content.batch.parallelism:8}") int parallelism) {
+        return new ContentBatchExecutor(parallelism);
+    }
+
+    /**
+     * Streaming mode for uploads: Axiom messages are parsed on demand instead
+     * of into a SAAJ DOM, and StoreContentRequest bypasses JAXB. Every other
+     * operation still goes through the annotated endpoints.
+     *
+     * <p>Payload caching stays on, since the payload root mapping and JAXB
+     * both read the payload of the other operations. The streaming endpoint
+     * only reads the few elements it needs and streams the attachment, so
+     * it gains nothing from turning caching off for every message.
+     */
+    @Configuration
+    @ConditionalOnProperty(name = "content.ws.streaming", havingValue = "true")
+    static class StreamingConfiguration {
+
+        @Bean(name = MessageDispatcherServlet.DEFAULT_MESSAGE_FACTORY_BEAN_NAME)
+        public AxiomSoapMessageFactory messageFactory(
+                @Value("${content.ws.attachment-cache-threshold:65536}") int attachmentCacheThreshold) {
+            AxiomSoapMessageFactory messageFactory = new AxiomSoapMessageFactory();
+            messageFactory.setPayloadCaching(true);
+            // attachments above the threshold go to a temp file instead of the heap
+            messageFactory.setAttachmentCaching(true);
+            messageFactory.setAttachmentCacheThreshold(attachmentCacheThreshold);
+            return messageFactory;
+        }
+
+        @Bean
+        public StreamingStoreContentEndpoint streamingStoreContentEndpoint(ContentRepository contentRepository,
+                ContentMetrics contentMetrics) {
+            return new StreamingStoreContentEndpoint(contentRepository, contentMetrics);
+        }
+
+        @Bean
+        public StreamingPayloadRootEndpointMapping streamingEndpointMapping(
+                StreamingStoreContentEndpoint streamingStoreContentEndpoint) {
+            StreamingPayloadRootEndpointMapping mapping = new StreamingPayloadRootEndpointMapping(
+                    Map.of(StreamingStoreContentEndpoint.REQUEST_NAME, streamingStoreContentEndpoint));
+            mapping.setOrder(Ordered.HIGHEST_PRECEDENCE);
+            return mapping;
+        }
+
+        @Bean
+        public MessageEndpointAdapter messageEndpointAdapter() {
+            return new MessageEndpointAdapter();
+        }
+    }
+
     @Bean
     public SimpleWsdl11Definition contentStore() {
         SimpleWsdl11Definition definition = new SimpleWsdl11Definition();
@@ -0,0 +1,82 @@
+package com.viking.server.io;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Read-only channel over an in-memory buffer. The buffer is shared, never
+ * copied; every channel keeps its own position.
+ */
+public class ByteBufferChannel implements SeekableByteChannel {
+
+    private final ByteBuffer buffer;
+    private boolean open = true;
+
+    public ByteBufferChannel(ByteBuffer buffer) {
+        this.buffer = buffer.slice().asReadOnlyBuffer();
+    }
+
+    /** The bytes from the current position to the end, without copying. */
+    public ByteBuffer remaining() {
+        return buffer.slice();
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws ClosedChannelException {
+        ensureOpen();
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int count = Math.min(dst.remaining(), buffer.remaining());
+        dst.put(buffer.slice(buffer.position(), count));
+        buffer.position(buffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws ClosedChannelException {
+        ensureOpen();
+        return buffer.position();
+    }
+
+    @Override
+    public ByteBufferChannel position(long newPosition) throws ClosedChannelException {
+        ensureOpen();
+        buffer.position((int) Math.min(newPosition, buffer.limit()));
+        return this;
+    }
+
+    @Override
+    public long size() throws ClosedChannelException {
+        ensureOpen();
+        return buffer.limit();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
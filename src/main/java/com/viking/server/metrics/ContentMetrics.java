@@ -0,0 +1,233 @@
+package com.viking.server.metrics;
+
+import java.lang.reflect.Method;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+import org.springframework.ws.server.endpoint.annotation.PayloadRoot;
+
+import com.viking.exception.ServerBusyException;
+import com.viking.exception.ValidationException.Reason;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+/**
+ * Meters of the content service.
+ *
+ * <p>Every meter is registered up front or, for endpoint operations, once
+ * per endpoint method, and then held in a field or map. Recording is a
+ * lookup plus {@code record}, with no tag or builder allocation on the
+ * request path.
+ *
+ * <ul>
+ * <li>{@code content.phase.duration}: timer tagged with {@code operation}
+ * and {@code phase} (unmarshal, validation, disk_write, marshal, endpoint)
+ * <li>{@code content.operation.faults}: operations that ended in a fault
+ * <li>{@code content.attachment.size}: attachment bytes, tagged
+ * {@code direction} in or out
+ * <li>{@code content.validation.rejections}: rejected stores by {@code reason}
+ * <li>{@code content.storage.used} / {@code content.storage.limit}: quota gauges
+ * <li>{@code content.storage.evictions}: content dropped by the retention
+ * policy, tagged {@code cause} expired or pressure
+ * <li>{@code content.admission.queued}, {@code content.admission.active},
+ * {@code content.admission.in_flight}: transfers waiting, transfers admitted
+ * and the bytes they were charged
+ * <li>{@code content.admission.wait}: time spent waiting for admission
+ * <li>{@code content.admission.rejections}: transfers turned away by {@code reason}
+ * </ul>
+ */
+public class ContentMetrics {
+
+    public enum Phase {
+        UNMARSHAL, VALIDATION, DISK_WRITE, MARSHAL, ENDPOINT;
+
+        final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    /** Operation tag for store phases recorded by the repository itself. */
+    public static final String STORE_OPERATION = "StoreContent";
+
+    private final MeterRegistry registry;
+    private final Map<Method, OperationMeters> endpointMeters = new ConcurrentHashMap<>();
+    private final OperationMeters storeMeters;
+    private final DistributionSummary bytesIn;
+    private final DistributionSummary bytesOut;
+    private final Map<Reason, Counter> rejections = new EnumMap<>(Reason.class);
+    private final Counter expiredEvictions;
+    private final Counter pressureEvictions;
+    private final Timer admissionWait;
+    private final Map<ServerBusyException.Reason, Counter> admissionRejections =
+            new EnumMap<>(ServerBusyException.Reason.class);
+
+    public ContentMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.storeMeters = new OperationMeters(registry, STORE_OPERATION);
+        this.bytesIn = attachmentSize(registry, "in");
+        this.bytesOut = attachmentSize(registry, "out");
+        for (Reason reason : Reason.values()) {
+            rejections.put(reason, Counter.builder("content.validation.rejections")
+                    .description("Stores rejected by validation or quota")
+                    .tag("reason", reason.name().toLowerCase(Locale.ROOT))
+                    .register(registry));
+        }
+        this.expiredEvictions = eviction(registry, "expired");
+        this.pressureEvictions = eviction(registry, "pressure");
+        this.admissionWait = Timer.builder("content.admission.wait")
+                .description("Time transfers waited for admission")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(registry);
+        for (ServerBusyException.Reason reason : ServerBusyException.Reason.values()) {
+            admissionRejections.put(reason, Counter.builder("content.admission.rejections")
+                    .description("Transfers turned away by admission control")
+                    .tag("reason", reason.name().toLowerCase(Locale.ROOT))
+                    .register(registry));
+        }
+    }
+
+    /** Metrics that record nothing, for components created outside Spring. */
+    public static ContentMetrics noop() {
+        return new ContentMetrics(new CompositeMeterRegistry());
+    }
+
+    public void recordStore(long validationNanos, long writeNanos, long bytes) {
+        storeMeters.timer(Phase.VALIDATION).record(validationNanos, TimeUnit.NANOSECONDS);
+        storeMeters.timer(Phase.DISK_WRITE).record(writeNanos, TimeUnit.NANOSECONDS);
+        bytesIn.record(bytes);
+    }
+
+    /** A phase of a store handled outside the method endpoints, such as by the streaming endpoint. */
+    public void recordStorePhase(Phase phase, long nanos) {
+        storeMeters.timer(phase).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordStoreFault() {
+        storeMeters.faults.increment();
+    }
+
+    public void recordBytesOut(long bytes) {
+        bytesOut.record(bytes);
+    }
+
+    public void recordRejection(Reason reason) {
+        rejections.get(reason).increment();
+    }
+
+    /** Content evicted by the retention policy, because its TTL ran out or to make room. */
+    public void recordEviction(boolean expired) {
+        (expired ? expiredEvictions : pressureEvictions).increment();
+    }
+
+    public void recordEndpointPhase(Method endpointMethod, Phase phase, long nanos) {
+        endpointMeters(endpointMethod).timer(phase).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordFault(Method endpointMethod) {
+        endpointMeters(endpointMethod).faults.increment();
+    }
+
+    public void registerStorageGauges(LongSupplier usedBytes, long limitBytes) {
+        Gauge.builder("content.storage.used", usedBytes, LongSupplier::getAsLong)
+                .description("Bytes committed or reserved against the storage quota")
+                .baseUnit("bytes")
+                .strongReference(true)
+                .register(registry);
+        Gauge.builder("content.storage.limit", () -> limitBytes)
+                .description("Storage quota")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    public void registerAdmissionGauges(IntSupplier queued, IntSupplier activeTransfers, LongSupplier inFlightBytes) {
+        Gauge.builder("content.admission.queued", queued, IntSupplier::getAsInt)
+                .description("Transfers waiting for admission")
+                .strongReference(true)
+                .register(registry);
+        Gauge.builder("content.admission.active", activeTransfers, IntSupplier::getAsInt)
+                .description("Transfers admitted and not finished")
+                .strongReference(true)
+                .register(registry);
+        Gauge.builder("content.admission.in_flight", inFlightBytes, LongSupplier::getAsLong)
+                .description("Bytes charged to admitted transfers")
+                .baseUnit("bytes")
+                .strongReference(true)
+                .register(registry);
+    }
+
+    public void recordAdmissionWait(long nanos) {
+        admissionWait.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordAdmissionRejection(ServerBusyException.Reason reason) {
+        admissionRejections.get(reason).increment();
+    }
+
+    private OperationMeters endpointMeters(Method endpointMethod) {
+        OperationMeters meters = endpointMeters.get(endpointMethod);
+        if (meters == null) {
+            meters = endpointMeters.computeIfAbsent(endpointMethod,
+                    method -> new OperationMeters(registry, operationName(method)));
+        }
+        return meters;
+    }
+
+    /** The request element without its {@code Request} suffix, e.g. {@code LoadContent}. */
+    private static String operationName(Method method) {
+        PayloadRoot payloadRoot = method.getAnnotation(PayloadRoot.class);
+        if (payloadRoot == null) {
+            return method.getName();
+        }
+        String localPart = payloadRoot.localPart();
+        return localPart.endsWith("Request") ? localPart.substring(0, localPart.length() - "Request".length()) : localPart;
+    }
+
+    private static DistributionSummary attachmentSize(MeterRegistry registry, String direction) {
+        return DistributionSummary.builder("content.attachment.size")
+                .description("Size of MTOM attachments")
+                .baseUnit("bytes")
+                .tag("direction", direction)
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+    }
+
+    private static Counter eviction(MeterRegistry registry, String cause) {
+        return Counter.builder("content.storage.evictions")
+                .description("Content dropped by the retention policy")
+                .tag("cause", cause)
+                .register(registry);
+    }
+
+    private static final class OperationMeters {
+
+        private final Map<Phase, Timer> timers = new EnumMap<>(Phase.class);
+        private final Counter faults;
+
+        OperationMeters(MeterRegistry registry, String operation) {
+            for (Phase phase : Phase.values()) {
+                timers.put(phase, Timer.builder("content.phase.duration")
+                        .description("Time spent per operation and phase")
+                        .tag("operation", operation)
+                        .tag("phase", phase.tag)
+                        .publishPercentiles(0.5, 0.99, 0.999)
+                        .register(registry));
+            }
+            this.faults = Counter.builder("content.operation.faults")
+                    .description("Operations that ended in a SOAP fault")
+                    .tag("operation", operation)
+                    .register(registry);
+        }
+
+        Timer timer(Phase phase) {
+            return timers.get(phase);
+        }
+    }
+}
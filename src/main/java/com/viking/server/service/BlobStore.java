@@ -0,0 +1,160 @@
+package com.viking.server.service;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.viking.exception.ValidationException;
+
+/**
+ * Content-addressed storage for the deduplicating mode of the repository.
+ *
+ * <p>Each distinct content is stored once as a blob named after its SHA-256,
+ * in a shard of {@link #BLOB_DIR}. Names are {@link ContentIndex} entries
+ * pointing at blobs, and the index counts the references to each of them.
+ * Storing content that is already present only adds an entry, so the
+ * duplicate costs no quota: its spool defers the quota and only reserves it
+ * once the content turns out to be new. When the last name pointing at a
+ * blob is overwritten or deleted, the repository retires the blob and later
+ * has it deleted through {@link #deleteIfUnreferenced}, unless an upload of
+ * the same content brought it back in the meantime. Both run under a lock
+ * of the blob, so uploads of different content do not wait for each other.
+ */
+class BlobStore {
+
+    private static final Logger log = LoggerFactory.getLogger(BlobStore.class);
+
+    static final String BLOB_DIR = "blobs";
+    // name pointers of the layout before the content index
+    private static final String LEGACY_INDEX_FILE = "names.idx";
+    private static final int BLOB_LOCK_STRIPES = 256;
+
+    private final Path root;
+    private final ContentIndex index;
+    // serialise publishing and deleting per blob location
+    private final ReentrantLock[] blobLocks = new ReentrantLock[BLOB_LOCK_STRIPES];
+
+    private BlobStore(Path root, ContentIndex index) {
+        this.root = root;
+        this.index = index;
+        for (int i = 0; i < BLOB_LOCK_STRIPES; i++) {
+            blobLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Opens the blob store under {@code root}, first moving blobs of the
+     * flat layout into shards and their names into the index.
+     */
+    static BlobStore open(Path root, ContentIndex index) throws IOException {
+        BlobStore store = new BlobStore(root, index);
+        Files.createDirectories(root.resolve(BLOB_DIR));
+        store.importLegacyIndex();
+        return store;
+    }
+
+    static String location(String digest) {
+        return ContentIndex.shardedLocation(BLOB_DIR, digest);
+    }
+
+    /**
+     * Points {@code name} at the spooled content as {@code version}. The
+     * spool becomes a new blob unless a blob with the same digest exists, in
+     * which case it is discarded. Returns what the name pointed at before.
+     * Fails with the quota error if the content is new and the quota has no
+     * room for what the spool deferred.
+     */
+    ContentIndex.Unlinked publish(String name, UploadSpool spool, long version, String contentType)
+            throws IOException, ValidationException {
+        String digest = spool.digest();
+        String location = location(digest);
+        Path blob = root.resolve(location);
+        ReentrantLock lock = lockFor(location);
+        lock.lock();
+        try {
+            long blobSize;
+            if (index.isReferenced(location)) {
+                spool.discard();
+                blobSize = Files.size(blob);
+                log.debug("Content {} deduplicated against blob {}", name, digest);
+            } else {
+                spool.reserveRemaining();
+                Files.createDirectories(blob.getParent());
+                spool.publish(blob);
+                blobSize = spool.diskSize();
+            }
+
+            return index.put(new ContentIndex.Entry(name, location, version, spool.size(), blobSize, digest,
+                    System.currentTimeMillis(), contentType));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the file at {@code location} if no name points at it. Runs
+     * under the same lock as {@link #publish} of that blob, so it cannot
+     * delete a blob that is being brought back.
+     */
+    void deleteIfUnreferenced(String location) throws IOException {
+        ReentrantLock lock = lockFor(location);
+        lock.lock();
+        try {
+            if (!index.isReferenced(location)) {
+                Files.deleteIfExists(root.resolve(location));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock lockFor(String location) {
+        return blobLocks[(location.hashCode() & 0x7fffffff) % BLOB_LOCK_STRIPES];
+    }
+
+    /** Legacy index lines are {@code digest TAB size TAB url-encoded name}, with blobs at {@code blobs/digest}. */
+    private void importLegacyIndex() throws IOException {
+        Path legacyIndex = root.resolve(LEGACY_INDEX_FILE);
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(legacyIndex, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        int imported = 0;
+        for (String line : lines) {
+            String[] fields = line.split("\t", 3);
+            if (fields.length != 3) {
+                continue;
+            }
+            String name = URLDecoder.decode(fields[2], StandardCharsets.UTF_8);
+            String digest = fields[0];
+            Path legacyBlob = root.resolve(BLOB_DIR).resolve(digest);
+            Path blob = root.resolve(location(digest));
+            if (Files.isRegularFile(legacyBlob)) {
+                Files.createDirectories(blob.getParent());
+                Files.move(legacyBlob, blob, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (!Files.isRegularFile(blob)) {
+                log.warn("Dropping legacy index entry {}: blob {} is missing", name, digest);
+                continue;
+            }
+            long version = index.nextVersion();
+            StoredContent content = ContentRepositoryImpl.describe(name, blob, version, digest);
+            index.put(new ContentIndex.Entry(name, location(digest), version, content.size(),
+                    Files.size(blob), digest, Files.getLastModifiedTime(blob).toMillis(), null));
+            imported++;
+        }
+        Files.delete(legacyIndex);
+        log.info("Imported {} names from {}", imported, legacyIndex);
+    }
+}
@@ -0,0 +1,278 @@
+package com.viking.server.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.viking.exception.ContentNotFoundException;
+import com.viking.exception.ValidationException;
+import com.viking.server.io.ByteBufferChannel;
+
+import jakarta.activation.DataHandler;
+
+/**
+ * Keeps hot content in direct buffers in front of another repository.
+ *
+ * <p>The cache is bounded by a byte budget. Eviction is LRU, guarded by a
+ * TinyLFU-style admission filter: when the cache is full, new content only
+ * replaces the LRU victims if it has been requested more often than they
+ * have. A single large one-off download therefore cannot flush the hot set.
+ * Stores invalidate the name they write, and a load that raced with a store
+ * never installs what it read. Hits are reported to the delegate, so its
+ * retention policy sees cached content as read.
+ */
+public class CachingContentRepository implements ContentRepository {
+
+    private static final Logger log = LoggerFactory.getLogger(CachingContentRepository.class);
+
+    private static final int VERSION_STRIPES = 1024;
+
+    public record Stats(long hits, long misses, long evictions, long rejections, long usedBytes, int entries) {
+    }
+
+    private final ContentRepository delegate;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+
+    private final Map<String, CachedContent> entries = new ConcurrentHashMap<>();
+    // LRU order of the entries, guarded by lock
+    private final LinkedHashMap<String, CachedContent> order = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock();
+    private long usedBytes;
+
+    private final FrequencySketch sketch;
+    // bumped around every store, so loads can tell that their read may be stale
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    public CachingContentRepository(ContentRepository delegate, long maxBytes, long maxEntryBytes) {
+        this.delegate = delegate;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+        this.sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(1024, maxBytes / (16 * 1024))));
+    }
+
+    @Override
+    @Deprecated
+    public File loadContent(String name) throws ContentNotFoundException {
+        return delegate.loadContent(name);
+    }
+
+    @Override
+    public StoredContent openContent(String name) throws IOException, ContentNotFoundException {
+        sketch.increment(name);
+        CachedContent cached = entries.get(name);
+        if (cached != null) {
+            hits.increment();
+            delegate.recordAccess(name);
+            if (lock.tryLock()) {
+                try {
+                    order.get(name);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return cached;
+        }
+
+        misses.increment();
+        long version = versions.get(stripe(name));
+        StoredContent content = delegate.openContent(name);
+        if (content.size() > maxEntryBytes || !reserve(name, content.size())) {
+            return content;
+        }
+
+        CachedContent loaded;
+        try {
+            loaded = new CachedContent(name, content.version(), content.digest(), read(content));
+        } catch (IOException | RuntimeException e) {
+            release(content.size());
+            throw e;
+        }
+        if (!install(loaded, version, content.size())) {
+            return content;
+        }
+        return loaded;
+    }
+
+    @Override
+    public long storeContent(String name, DataHandler content, long ifMatchVersion)
+            throws IOException, ValidationException {
+        int stripe = stripe(name);
+        versions.incrementAndGet(stripe);
+        try {
+            return delegate.storeContent(name, content, ifMatchVersion);
+        } finally {
+            invalidate(name);
+            versions.incrementAndGet(stripe);
+        }
+    }
+
+    @Override
+    public boolean deleteContent(String name) throws IOException {
+        int stripe = stripe(name);
+        versions.incrementAndGet(stripe);
+        try {
+            return delegate.deleteContent(name);
+        } finally {
+            invalidate(name);
+            versions.incrementAndGet(stripe);
+        }
+    }
+
+    @Override
+    public void recordAccess(String name) {
+        delegate.recordAccess(name);
+    }
+
+    @Override
+    public ContentInfo contentInfo(String name) throws IOException, ContentNotFoundException {
+        return delegate.contentInfo(name);
+    }
+
+    @Override
+    public List<ContentInfo> listContent(String prefix) throws IOException {
+        return delegate.listContent(prefix);
+    }
+
+    public Stats stats() {
+        lock.lock();
+        try {
+            return new Stats(hits.sum(), misses.sum(), evictions.sum(), rejections.sum(), usedBytes, order.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Drops {@code name} from the cache, for content removed behind the cache's back. */
+    public void invalidate(String name) {
+        lock.lock();
+        try {
+            CachedContent removed = order.remove(name);
+            if (removed != null) {
+                entries.remove(name);
+                usedBytes -= removed.size();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes room for {@code size} bytes, evicting LRU entries only if the
+     * candidate is more popular than each of them.
+     */
+    private boolean reserve(String name, long size) {
+        lock.lock();
+        try {
+            if (usedBytes + size > maxBytes) {
+                int candidateFrequency = sketch.frequency(name);
+                List<CachedContent> victims = new ArrayList<>();
+                long freed = 0;
+                Iterator<CachedContent> lru = order.values().iterator();
+                while (usedBytes - freed + size > maxBytes && lru.hasNext()) {
+                    CachedContent victim = lru.next();
+                    if (sketch.frequency(victim.name()) >= candidateFrequency) {
+                        rejections.increment();
+                        return false;
+                    }
+                    victims.add(victim);
+                    freed += victim.size();
+                }
+                if (usedBytes - freed + size > maxBytes) {
+                    rejections.increment();
+                    return false;
+                }
+                for (CachedContent victim : victims) {
+                    order.remove(victim.name());
+                    entries.remove(victim.name());
+                    usedBytes -= victim.size();
+                }
+                evictions.add(victims.size());
+            }
+            usedBytes += size;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long size) {
+        lock.lock();
+        try {
+            usedBytes -= size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean install(CachedContent loaded, long version, long reservedBytes) {
+        lock.lock();
+        try {
+            if (versions.get(stripe(loaded.name())) != version || order.containsKey(loaded.name())) {
+                usedBytes -= reservedBytes;
+                return false;
+            }
+            usedBytes += loaded.size() - reservedBytes;
+            order.put(loaded.name(), loaded);
+            entries.put(loaded.name(), loaded);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static ByteBuffer read(StoredContent content) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) content.size());
+        try (ReadableByteChannel channel = content.openChannel()) {
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // keep reading until the buffer is full
+            }
+        }
+        if (buffer.hasRemaining()) {
+            log.debug("Content {} shrank while it was cached", content.name());
+        }
+        return buffer.flip();
+    }
+
+    private static int stripe(String name) {
+        return (name.hashCode() & 0x7fffffff) % VERSION_STRIPES;
+    }
+
+    /** Content served from a direct buffer. */
+    private record CachedContent(String name, long version, String digest, ByteBuffer buffer)
+            implements StoredContent {
+
+        @Override
+        public long size() {
+            return buffer.limit();
+        }
+
+        @Override
+        public ByteBufferChannel openChannel() {
+            return new ByteBufferChannel(buffer);
+        }
+
+        @Override
+        public ByteBufferChannel openChannel(long position) throws IOException {
+            return new ByteBufferChannel(buffer).position(position);
+        }
+    }
+}
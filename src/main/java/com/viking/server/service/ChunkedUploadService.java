@@ -0,0 +1,436 @@
+package com.viking.server.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.viking.exception.ValidationException;
+import com.viking.exception.ValidationException.Reason;
+
+import jakarta.activation.DataHandler;
+import jakarta.activation.FileDataSource;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Assembles uploads that arrive as separately sent chunks.
+ *
+ * <p>Each upload gets a sparse staging file that chunks are written into at
+ * {@code index * chunkSize} with positional writes, so chunks may arrive in
+ * any order and in parallel over several connections. A chunk can be sent
+ * again after a failure, and the status call tells a resuming client which
+ * chunks the server already holds. Commit compares the client's CRC32C for
+ * every chunk with the one computed on arrival and then stores the assembled
+ * file through {@link ContentRepository#storeContent}, so it goes through
+ * the same validation and quota as a single-shot upload.
+ *
+ * <p>Staging files live under the store root, next to the content they
+ * become. They only belong to sessions held in memory, so any left on
+ * startup are deleted.
+ *
+ * <p>The name is validated when the upload begins, and the full size is
+ * reserved against the storage quota for as long as the staging file
+ * exists, so staged uploads cannot fill the disk past the quota. Sessions
+ * idle for longer than {@code content.upload.session-timeout} are discarded
+ * in the background. Chunks are written under the read side of a
+ * per-session lock, so they still run in parallel, while commit and discard
+ * take the write side; once a session is closed it takes no more chunks.
+ */
+@Service
+public class ChunkedUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChunkedUploadService.class);
+
+    private static final int MIN_CHUNK_SIZE = 16 * 1024;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final String STAGING_SUFFIX = ".upload";
+
+    private final ContentRepository contentRepository;
+    private final ContentRepositoryImpl storage;
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    @Value("${content.upload.max-sessions:64}") int maxSessions = 64;
+
+    @Value("${content.upload.session-timeout:PT1H}") Duration sessionTimeout = Duration.ofHours(1);
+
+    /** How often idle sessions are looked for. */
+    @Value("${content.upload.expiry-interval:PT1M}") Duration expiryInterval = Duration.ofMinutes(1);
+
+    private Path stagingDir;
+    private ScheduledExecutorService expiry;
+
+    /**
+     * {@code contentRepository} takes committed uploads; {@code storage} is
+     * the store behind it, whose name rules and quota apply to staging.
+     */
+    public ChunkedUploadService(ContentRepository contentRepository, ContentRepositoryImpl storage) {
+        this.contentRepository = contentRepository;
+        this.storage = storage;
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        stagingDir = storage.uploadDir();
+        Files.createDirectories(stagingDir);
+        deleteStaleStagingFiles(stagingDir);
+        expiry = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upload-session-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = expiryInterval.toMillis();
+        expiry.scheduleWithFixedDelay(() -> {
+            try {
+                expireIdleSessions();
+            } catch (RuntimeException e) {
+                log.warn("Expiring upload sessions failed", e);
+            }
+        }, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (expiry != null) {
+            expiry.shutdownNow();
+        }
+        sessions.values().forEach(UploadSession::discard);
+        sessions.clear();
+    }
+
+    public UploadSession beginUpload(String name, long totalSize, int chunkSize)
+            throws IOException, ValidationException {
+        storage.validateFileName(name);
+        if (totalSize < 0 || totalSize > ContentRepositoryImpl.MAX_FILE_SIZE) {
+            throw new ValidationException(Reason.FILE_SIZE, "File exceeded 3MB limit: " + totalSize + " bytes");
+        }
+        if (chunkSize < MIN_CHUNK_SIZE) {
+            throw new ValidationException(Reason.UPLOAD_PROTOCOL,
+                    "Chunk size must be at least " + MIN_CHUNK_SIZE + " bytes: " + chunkSize);
+        }
+        expireIdleSessions();
+        if (sessions.size() >= maxSessions) {
+            throw new ValidationException(Reason.UPLOAD_PROTOCOL, "Too many uploads in progress: " + sessions.size());
+        }
+
+        StorageQuota quota = storage.storageQuota();
+        quota.reserve(totalSize);
+        String uploadId = UUID.randomUUID().toString();
+        Path file = stagingDir.resolve(uploadId + STAGING_SUFFIX);
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                    StandardOpenOption.READ, StandardOpenOption.SPARSE);
+        } catch (IOException e) {
+            quota.release(totalSize);
+            throw e;
+        }
+        UploadSession session = new UploadSession(uploadId, name, totalSize, chunkSize, file, channel, quota);
+        sessions.put(uploadId, session);
+        log.info("Upload {} started: name={}, size={}, chunks={}", uploadId, name, totalSize, session.chunkCount());
+        return session;
+    }
+
+    /** Writes one chunk at its offset and returns its CRC32C. */
+    public String storeChunk(String uploadId, int index, DataHandler content) throws IOException, ValidationException {
+        UploadSession session = session(uploadId);
+        if (index < 0 || index >= session.chunkCount()) {
+            throw new ValidationException(Reason.UPLOAD_PROTOCOL, "Chunk index out of range: " + index);
+        }
+        Lock lock = session.chunkLock();
+        lock.lock();
+        try {
+            session.requireOpen();
+            return writeChunk(session, index, content);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String writeChunk(UploadSession session, int index, DataHandler content)
+            throws IOException, ValidationException {
+        long offset = (long) index * session.chunkSize();
+        long expected = Math.min(session.chunkSize(), session.totalSize() - offset);
+
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+        long written = 0;
+        try (InputStream in = content.getInputStream()) {
+            int read;
+            while ((read = in.read(buffer.array())) != -1) {
+                if (written + read > expected) {
+                    throw new ValidationException(Reason.UPLOAD_PROTOCOL,
+                            "Chunk " + index + " exceeds its size of " + expected + " bytes");
+                }
+                crc.update(buffer.array(), 0, read);
+                buffer.limit(read);
+                while (buffer.hasRemaining()) {
+                    written += session.channel().write(buffer, offset + written);
+                }
+                buffer.clear();
+            }
+        }
+        if (written != expected) {
+            throw new ValidationException(Reason.UPLOAD_PROTOCOL,
+                    "Chunk " + index + " has " + written + " bytes, expected " + expected);
+        }
+
+        String checksum = HexFormat.of().toHexDigits((int) crc.getValue());
+        session.received(index, checksum);
+        return checksum;
+    }
+
+    public UploadSession status(String uploadId) throws ValidationException {
+        return session(uploadId);
+    }
+
+    /**
+     * Checks the client's checksums against the received chunks and publishes
+     * the assembled content. The session survives a failed commit, so the
+     * client can resend bad chunks and commit again.
+     */
+    public long commit(String uploadId, Map<Integer, String> checksums) throws IOException, ValidationException {
+        UploadSession session = session(uploadId);
+        Lock lock = session.closeLock();
+        lock.lock();
+        try {
+            session.requireOpen();
+            for (int index = 0; index < session.chunkCount(); index++) {
+                String received = session.checksum(index);
+                if (received == null) {
+                    throw new ValidationException(Reason.UPLOAD_PROTOCOL,
+                            "Chunk " + index + " of upload " + uploadId + " was not received");
+                }
+                if (!received.equalsIgnoreCase(checksums.get(index))) {
+                    throw new ValidationException(Reason.UPLOAD_PROTOCOL,
+                            "Checksum mismatch for chunk " + index + " of upload " + uploadId);
+                }
+            }
+
+            session.channel().force(false);
+            // the store reserves the size itself; holding both would charge the upload twice
+            session.quota().release(session.totalSize());
+            try {
+                contentRepository.storeContent(session.name(),
+                        new DataHandler(new FileDataSource(session.file().toFile())));
+            } catch (IOException | ValidationException | RuntimeException e) {
+                recharge(session, e);
+                throw e;
+            }
+            sessions.remove(uploadId);
+            session.close(false);
+        } finally {
+            lock.unlock();
+        }
+        log.info("Upload {} committed as {}", uploadId, session.name());
+        return session.totalSize();
+    }
+
+    private UploadSession session(String uploadId) throws ValidationException {
+        UploadSession session = sessions.get(uploadId);
+        if (session == null) {
+            throw new ValidationException(Reason.UPLOAD_PROTOCOL, "Unknown upload id: " + uploadId);
+        }
+        session.touch();
+        return session;
+    }
+
+    /** Takes the staging reservation back after a failed commit, or drops the session if it no longer fits. */
+    private void recharge(UploadSession session, Exception failure) {
+        try {
+            session.quota().reserve(session.totalSize());
+        } catch (ValidationException e) {
+            log.info("Upload {} discarded: no room left to keep it staged", session.id());
+            sessions.remove(session.id());
+            session.close(false);
+            failure.addSuppressed(e);
+        }
+    }
+
+    /** Sessions live in memory only, so staging files found on startup belong to none. */
+    private static void deleteStaleStagingFiles(Path stagingDir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(stagingDir, "*" + STAGING_SUFFIX)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /** Discards sessions idle for longer than the timeout; those busy with a chunk or commit are left alone. */
+    void expireIdleSessions() {
+        long deadline = System.nanoTime() - sessionTimeout.toNanos();
+        sessions.values().removeIf(session -> {
+            if (session.lastAccess() - deadline < 0 && session.tryDiscard()) {
+                log.info("Upload {} expired", session.id());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /** State of an upload that has been started but not committed yet. */
+    public static final class UploadSession {
+
+        private final String id;
+        private final String name;
+        private final long totalSize;
+        private final int chunkSize;
+        private final Path file;
+        private final FileChannel channel;
+        private final AtomicReferenceArray<String> checksums;
+        private final StorageQuota quota;
+        // read side for chunk writes, write side for commit and discard
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private volatile long lastAccess = System.nanoTime();
+        private volatile boolean closed;
+
+        UploadSession(String id, String name, long totalSize, int chunkSize, Path file, FileChannel channel,
+                StorageQuota quota) {
+            this.id = id;
+            this.name = name;
+            this.totalSize = totalSize;
+            this.chunkSize = chunkSize;
+            this.file = file;
+            this.channel = channel;
+            this.quota = quota;
+            int chunkCount = (int) Math.max(1, (totalSize + chunkSize - 1) / chunkSize);
+            this.checksums = new AtomicReferenceArray<>(chunkCount);
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public long totalSize() {
+            return totalSize;
+        }
+
+        public int chunkSize() {
+            return chunkSize;
+        }
+
+        public int chunkCount() {
+            return checksums.length();
+        }
+
+        /** Checksums of the chunks received so far, by chunk index. */
+        public SortedMap<Integer, String> receivedChunks() {
+            SortedMap<Integer, String> received = new TreeMap<>();
+            for (int index = 0; index < checksums.length(); index++) {
+                String checksum = checksums.get(index);
+                if (checksum != null) {
+                    received.put(index, checksum);
+                }
+            }
+            return received;
+        }
+
+        Path file() {
+            return file;
+        }
+
+        FileChannel channel() {
+            return channel;
+        }
+
+        String checksum(int index) {
+            return checksums.get(index);
+        }
+
+        void received(int index, String checksum) {
+            checksums.set(index, checksum);
+        }
+
+        long lastAccess() {
+            return lastAccess;
+        }
+
+        void touch() {
+            lastAccess = System.nanoTime();
+        }
+
+        StorageQuota quota() {
+            return quota;
+        }
+
+        Lock chunkLock() {
+            return lock.readLock();
+        }
+
+        Lock closeLock() {
+            return lock.writeLock();
+        }
+
+        void requireOpen() throws ValidationException {
+            if (closed) {
+                throw new ValidationException(Reason.UPLOAD_PROTOCOL, "Upload " + id + " is already closed");
+            }
+        }
+
+        /** Discards the session unless a chunk or commit holds it. */
+        boolean tryDiscard() {
+            if (!lock.writeLock().tryLock()) {
+                return false;
+            }
+            try {
+                close(true);
+                return true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void discard() {
+            lock.writeLock().lock();
+            try {
+                close(true);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /** Deletes the staging file; {@code releaseQuota} if the reservation is still held. */
+        void close(boolean releaseQuota) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (releaseQuota) {
+                quota.release(totalSize);
+            }
+            try {
+                channel.close();
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Cannot delete staging file {}", file, e);
+            }
+        }
+    }
+}
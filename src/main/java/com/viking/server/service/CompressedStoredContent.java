@@ -0,0 +1,55 @@
+package com.viking.server.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Content stored in the {@link ContentCompression} format. Reading inflates
+ * on the fly; {@link #encoded} exposes the compressed bytes themselves for
+ * clients that can inflate on their side.
+ */
+record CompressedStoredContent(String name, Path path, long size, long diskSize, long version, String digest)
+        implements StoredContent {
+
+    private static final int INFLATE_BUFFER_SIZE = 64 * 1024;
+
+    @Override
+    public ReadableByteChannel openChannel() throws IOException {
+        InputStream in = Files.newInputStream(path);
+        try {
+            in.skipNBytes(ContentCompression.HEADER_SIZE);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        Inflater inflater = new Inflater();
+        return Channels.newChannel(new InflaterInputStream(in, inflater, INFLATE_BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        });
+    }
+
+    @Override
+    public String encoding() {
+        return ContentCompression.ENCODING;
+    }
+
+    @Override
+    public EncodedContent encoded() {
+        // the digest covers the inflated content, not the encoded region
+        return new EncodedContent(new FileStoredContent(name, path, diskSize, version, null),
+                ContentCompression.HEADER_SIZE, diskSize - ContentCompression.HEADER_SIZE);
+    }
+}
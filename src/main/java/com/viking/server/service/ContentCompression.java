@@ -0,0 +1,142 @@
+package com.viking.server.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * On-disk format and compression policy of stored content.
+ *
+ * <p>A compressed file starts with {@link #MAGIC} and the uncompressed
+ * length as a big-endian long, followed by a zlib stream ("deflate" in HTTP
+ * terms) written at {@code BEST_SPEED}. Anything else is raw content.
+ * Content that happens to start with the magic is always stored compressed,
+ * so the header can never be mistaken.
+ *
+ * <p>The decision is made once per object from its first bytes: known
+ * compressed formats are stored raw, and so is anything whose byte entropy
+ * says it would not shrink.
+ */
+final class ContentCompression {
+
+    static final String ENCODING = "deflate";
+
+    static final byte[] MAGIC = { 0, 'V', 'K', 'Z', '\r', '\n', 0x1A, 1 };
+    static final int HEADER_SIZE = MAGIC.length + Long.BYTES;
+
+    /** Bytes looked at before deciding; also the smallest content worth compressing. */
+    static final int SAMPLE_SIZE = 4096;
+    private static final int MIN_COMPRESSIBLE_SIZE = 512;
+    /** Bits per byte above which deflate gains too little to pay for the CPU. */
+    private static final double MAX_ENTROPY = 7.5;
+
+    private record Signature(int offset, byte[] bytes) {
+
+        boolean matches(byte[] sample, int length) {
+            return length >= offset + bytes.length
+                    && Arrays.equals(sample, offset, offset + bytes.length, bytes, 0, bytes.length);
+        }
+    }
+
+    // formats that are compressed already
+    private static final Signature[] COMPRESSED_SIGNATURES = {
+        new Signature(0, bytes(0xFF, 0xD8, 0xFF)),                 // JPEG
+        new Signature(0, bytes(0x89, 'P', 'N', 'G')),              // PNG
+        new Signature(0, bytes('G', 'I', 'F', '8')),               // GIF
+        new Signature(8, bytes('W', 'E', 'B', 'P')),               // WebP
+        new Signature(4, bytes('f', 't', 'y', 'p')),               // MP4, MOV, HEIC
+        new Signature(0, bytes('P', 'K', 0x03, 0x04)),             // ZIP, JAR, DOCX, XLSX
+        new Signature(0, bytes(0x1F, 0x8B)),                       // gzip
+        new Signature(0, bytes('B', 'Z', 'h')),                    // bzip2
+        new Signature(0, bytes(0xFD, '7', 'z', 'X', 'Z', 0x00)),   // xz
+        new Signature(0, bytes('7', 'z', 0xBC, 0xAF, 0x27, 0x1C)), // 7z
+        new Signature(0, bytes(0x28, 0xB5, 0x2F, 0xFD)),           // zstd
+        new Signature(0, bytes('R', 'a', 'r', '!')),               // RAR
+        new Signature(0, bytes('I', 'D', '3')),                    // MP3
+        new Signature(0, bytes('O', 'g', 'g', 'S')),               // Ogg
+        new Signature(0, bytes('f', 'L', 'a', 'C')),               // FLAC
+    };
+
+    private ContentCompression() {
+    }
+
+    static boolean startsWithMagic(byte[] sample, int length) {
+        return length >= MAGIC.length && Arrays.equals(sample, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+
+    /**
+     * Whether content starting with {@code sample} should be compressed.
+     * {@code length} is less than {@link #SAMPLE_SIZE} only if the sample
+     * is the whole content.
+     */
+    static boolean shouldCompress(byte[] sample, int length) {
+        if (length < MIN_COMPRESSIBLE_SIZE || isCompressedFormat(sample, length)) {
+            return false;
+        }
+        return entropy(sample, length) <= MAX_ENTROPY;
+    }
+
+    static boolean isCompressedFormat(byte[] sample, int length) {
+        for (Signature signature : COMPRESSED_SIGNATURES) {
+            if (signature.matches(sample, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Shannon entropy of the byte values, in bits per byte. */
+    static double entropy(byte[] sample, int length) {
+        int[] counts = new int[256];
+        for (int i = 0; i < length; i++) {
+            counts[sample[i] & 0xFF]++;
+        }
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / length;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2);
+    }
+
+    static byte[] header(long uncompressedSize) {
+        return ByteBuffer.allocate(HEADER_SIZE).put(MAGIC).putLong(uncompressedSize).array();
+    }
+
+    /** Stores the uncompressed length into the header of a finished file. */
+    static void writeUncompressedSize(Path file, long uncompressedSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer size = ByteBuffer.allocate(Long.BYTES).putLong(0, uncompressedSize);
+            while (size.hasRemaining()) {
+                channel.write(size, MAGIC.length + size.position());
+            }
+        }
+    }
+
+    /** The uncompressed length from the header, or -1 if the file is stored raw. */
+    static long readUncompressedSize(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) == -1) {
+                return -1;
+            }
+        }
+        if (!startsWithMagic(header.array(), HEADER_SIZE)) {
+            return -1;
+        }
+        return header.getLong(MAGIC.length);
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,481 @@
+package com.viking.server.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent metadata of every stored name: the file holding its bytes,
+ * its size, SHA-256, modification time and content type.
+ *
+ * <p>Entries live in memory and are persisted as an append-only log of put
+ * and remove records, each framed by its length and a CRC32. Opening maps
+ * the log and replays it. A record torn by a crash in the middle of an
+ * append fails its CRC and is cut off together with everything after it.
+ * Appends are not forced to disk, so an OS crash can lose the latest
+ * records but never damages earlier ones.
+ *
+ * <p>Overwrites and removes leave dead records behind. Once they outnumber
+ * the live entries, the log is compacted on a background thread: the live
+ * entries are written to a new log, records appended in the meantime are
+ * copied after them, and the new log is renamed over the old one.
+ *
+ * <p>Several names may point at one file, as they do in deduplicated
+ * storage. Files are reference counted and {@link #storedBytes()} counts
+ * each of them once, so the storage quota never needs a directory scan.
+ */
+class ContentIndex implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ContentIndex.class);
+
+    static final String INDEX_DIR = "index";
+    private static final String LOG_FILE = "content.log";
+    private static final String COMPACT_FILE = LOG_FILE + ".compact";
+
+    private static final int MAGIC = 0x564B4958; // VKIX
+    // 1 had no versions; 2 added them, with the version counter in the file header
+    private static final int FORMAT_VERSION = 2;
+    private static final int FILE_HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES;
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+
+    /** Logs smaller than this are not worth compacting. */
+    private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+
+    /**
+     * What the index knows about one name. {@code location} is the path of
+     * the file relative to the store root, {@code version} comes from
+     * {@link #nextVersion()}, {@code diskSize} is the size of the file, which
+     * may be compressed, and {@code modified} is in epoch millis.
+     */
+    record Entry(String name, String location, long version, long size, long diskSize, String digest,
+            long modified, String contentType) {
+    }
+
+    /**
+     * A name that stopped pointing at {@code entry}'s file. {@code orphaned}
+     * tells whether that was the last name pointing at it, in which case the
+     * caller deletes the file.
+     */
+    record Unlinked(Entry entry, boolean orphaned) {
+    }
+
+    private static final class FileRef {
+        int references;
+        long diskSize;
+    }
+
+    private final Path logFile;
+    private final NavigableMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+    // guarded by this
+    private final Map<String, FileRef> files = new HashMap<>();
+    private volatile long storedBytes;
+    // highest version handed out, never reused even after its name is removed
+    private final AtomicLong lastVersion = new AtomicLong();
+
+    // guarded by this
+    private FileChannel channel;
+    private long logSize;
+    private long records;
+    private boolean compactionScheduled;
+    // records appended while a compaction is running, non-null only then
+    private List<ByteBuffer> appendedDuringCompaction;
+    private final Object compactionLock = new Object();
+
+    private final long openedAt = System.currentTimeMillis();
+    private final ExecutorService background = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "content-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ContentIndex(Path logFile) {
+        this.logFile = logFile;
+    }
+
+    /** Opens the index kept in {@code indexDir}, creating it if needed, and replays its log. */
+    static ContentIndex open(Path indexDir) throws IOException {
+        Files.createDirectories(indexDir);
+        ContentIndex index = new ContentIndex(indexDir.resolve(LOG_FILE));
+        Files.deleteIfExists(indexDir.resolve(COMPACT_FILE));
+        try {
+            index.replay();
+        } catch (IOException | RuntimeException e) {
+            index.close();
+            throw e;
+        }
+        return index;
+    }
+
+    /** {@code dir/ab/cd/hash}, where {@code abcd} are the first characters of the hex {@code hash}. */
+    static String shardedLocation(String dir, String hash) {
+        return dir + '/' + hash.substring(0, 2) + '/' + hash.substring(2, 4) + '/' + hash;
+    }
+
+    /** Hex SHA-256 of {@code name}, which spreads names evenly over the shards. */
+    static String nameHash(String name) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest(name.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    Entry find(String name) {
+        return entries.get(name);
+    }
+
+    /** Entries whose name starts with {@code prefix}, in name order. */
+    List<Entry> list(String prefix) {
+        if (prefix == null || prefix.isEmpty()) {
+            return List.copyOf(entries.values());
+        }
+        return List.copyOf(entries.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values());
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * A version no entry ever had. Versions are unique across all names, so a
+     * name that is removed and stored again cannot repeat an earlier version.
+     */
+    long nextVersion() {
+        return lastVersion.incrementAndGet();
+    }
+
+    /** Bytes taken by all indexed files, each counted once however many names point at it. */
+    long storedBytes() {
+        return storedBytes;
+    }
+
+    synchronized boolean isReferenced(String location) {
+        return files.containsKey(location);
+    }
+
+    /** Records {@code entry}, replacing what was stored under its name before, if anything. */
+    synchronized Unlinked put(Entry entry) throws IOException {
+        append(encode(PUT, entry.name(), entry));
+        return apply(entry);
+    }
+
+    /** Forgets {@code name}; returns {@code null} if it was not indexed. */
+    synchronized Unlinked remove(String name) throws IOException {
+        if (!entries.containsKey(name)) {
+            return null;
+        }
+        append(encode(REMOVE, name, null));
+        return unapply(name);
+    }
+
+    private Unlinked apply(Entry entry) {
+        lastVersion.accumulateAndGet(entry.version(), Math::max);
+        FileRef file = files.computeIfAbsent(entry.location(), location -> new FileRef());
+        file.references++;
+        storedBytes += entry.diskSize() - file.diskSize;
+        file.diskSize = entry.diskSize();
+
+        Entry previous = entries.put(entry.name(), entry);
+        return previous != null ? unreference(previous) : null;
+    }
+
+    private Unlinked unapply(String name) {
+        Entry previous = entries.remove(name);
+        return previous != null ? unreference(previous) : null;
+    }
+
+    private Unlinked unreference(Entry entry) {
+        FileRef file = files.get(entry.location());
+        if (--file.references > 0) {
+            return new Unlinked(entry, false);
+        }
+        files.remove(entry.location());
+        storedBytes -= file.diskSize;
+        return new Unlinked(entry, true);
+    }
+
+    /**
+     * Deletes files under {@code dirs} of {@code root} that no entry points
+     * at, on the background thread. Such files are left over when the
+     * process stopped between publishing a file and indexing it. Only files
+     * older than this index are considered, so uploads being published
+     * right now are safe.
+     */
+    void sweepUnreferenced(Path root, String... dirs) {
+        background.execute(() -> {
+            for (String dir : dirs) {
+                if (!Files.isDirectory(root.resolve(dir))) {
+                    continue;
+                }
+                try (Stream<Path> paths = Files.walk(root.resolve(dir))) {
+                    paths.filter(Files::isRegularFile).forEach(file -> deleteIfUnreferenced(root, file));
+                } catch (IOException | UncheckedIOException e) {
+                    log.warn("Cannot sweep {} for unreferenced files", root.resolve(dir), e);
+                }
+            }
+        });
+    }
+
+    private void deleteIfUnreferenced(Path root, Path file) {
+        String location = root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+        try {
+            if (Files.getLastModifiedTime(file).toMillis() < openedAt && !isReferenced(location)) {
+                log.info("Deleting unreferenced file {}", location);
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            log.warn("Cannot delete unreferenced file {}", location, e);
+        }
+    }
+
+    /* ==================== LOG ==================== */
+
+    private void replay() throws IOException {
+        channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long fileSize = channel.size();
+        if (fileSize < 2 * Integer.BYTES) {
+            channel.truncate(0);
+            writeFully(channel, fileHeader(0), 0);
+            logSize = FILE_HEADER_SIZE;
+            return;
+        }
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException("Content index " + logFile + " is too large to replay: " + fileSize + " bytes");
+        }
+
+        long started = System.nanoTime();
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        if (mapped.getInt() != MAGIC) {
+            throw new IOException("Not a content index: " + logFile);
+        }
+        int format = mapped.getInt();
+        if (format < 1 || format > FORMAT_VERSION) {
+            throw new IOException("Unsupported content index format " + format + ": " + logFile);
+        }
+        if (format >= 2) {
+            lastVersion.set(mapped.getLong());
+        }
+        CRC32 crc = new CRC32();
+        while (mapped.remaining() >= RECORD_HEADER_SIZE) {
+            int start = mapped.position();
+            int length = mapped.getInt();
+            int checksum = mapped.getInt();
+            if (length <= 0 || length > mapped.remaining()) {
+                mapped.position(start);
+                break;
+            }
+            byte[] body = new byte[length];
+            mapped.get(body);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != checksum) {
+                mapped.position(start);
+                break;
+            }
+            decode(body, format);
+            records++;
+        }
+        logSize = mapped.position();
+        if (logSize < fileSize) {
+            log.warn("Content index {} ends with {} unreadable bytes, discarding them", logFile, fileSize - logSize);
+            channel.truncate(logSize);
+        }
+        log.info("Content index replayed: {} entries from {} records in {} ms", entries.size(), records,
+                (System.nanoTime() - started) / 1_000_000);
+        if (format < FORMAT_VERSION) {
+            // rewritten right away, so appends never mix formats
+            compact();
+        } else {
+            scheduleCompactionIfWorthIt();
+        }
+    }
+
+    private void decode(byte[] body, int format) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        byte op = in.readByte();
+        String name = in.readUTF();
+        if (op == PUT) {
+            String location = in.readUTF();
+            long version = format >= 2 ? in.readLong() : nextVersion();
+            long size = in.readLong();
+            long diskSize = in.readLong();
+            String digest = in.readUTF();
+            long modified = in.readLong();
+            String contentType = in.readUTF();
+            apply(new Entry(name, location, version, size, diskSize, digest, modified,
+                    contentType.isEmpty() ? null : contentType));
+        } else if (op == REMOVE) {
+            unapply(name);
+        } else {
+            throw new IOException("Unknown content index record type " + op + " in " + logFile);
+        }
+    }
+
+    private static ByteBuffer encode(byte op, String name, Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(op);
+        out.writeUTF(name);
+        if (entry != null) {
+            out.writeUTF(entry.location());
+            out.writeLong(entry.version());
+            out.writeLong(entry.size());
+            out.writeLong(entry.diskSize());
+            out.writeUTF(entry.digest());
+            out.writeLong(entry.modified());
+            out.writeUTF(entry.contentType() != null ? entry.contentType() : "");
+        }
+        byte[] body = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + body.length);
+        record.putInt(body.length).putInt((int) crc.getValue()).put(body).flip();
+        return record;
+    }
+
+    private static ByteBuffer fileHeader(long lastVersion) {
+        return ByteBuffer.allocate(FILE_HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION).putLong(lastVersion).flip();
+    }
+
+    private void append(ByteBuffer record) throws IOException {
+        if (channel == null) {
+            throw new IOException("Content index is closed");
+        }
+        if (appendedDuringCompaction != null) {
+            appendedDuringCompaction.add(record.duplicate());
+        }
+        logSize += writeFully(channel, record, logSize);
+        records++;
+        scheduleCompactionIfWorthIt();
+    }
+
+    private void scheduleCompactionIfWorthIt() {
+        if (!compactionScheduled && logSize >= MIN_COMPACTION_SIZE && records > 2L * entries.size()) {
+            compactionScheduled = true;
+            background.execute(this::compact);
+        }
+    }
+
+    /** Rewrites the log with only the live entries, after any compaction already running. */
+    void compact() {
+        synchronized (compactionLock) {
+            compactOnce();
+        }
+    }
+
+    private void compactOnce() {
+        List<Entry> snapshot;
+        long snapshotVersion;
+        synchronized (this) {
+            if (channel == null) {
+                return;
+            }
+            snapshot = new ArrayList<>(entries.values());
+            snapshotVersion = lastVersion.get();
+            appendedDuringCompaction = new ArrayList<>();
+        }
+        Path compactFile = logFile.resolveSibling(COMPACT_FILE);
+        try {
+            long size;
+            try (FileChannel out = FileChannel.open(compactFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                size = writeFully(out, fileHeader(snapshotVersion), 0);
+                for (Entry entry : snapshot) {
+                    size += writeFully(out, encode(PUT, entry.name(), entry), size);
+                }
+                out.force(false);
+            }
+            swapIn(compactFile, size, snapshot.size());
+        } catch (IOException e) {
+            log.warn("Content index compaction failed, keeping the current log", e);
+        } finally {
+            synchronized (this) {
+                appendedDuringCompaction = null;
+                compactionScheduled = false;
+            }
+            try {
+                Files.deleteIfExists(compactFile);
+            } catch (IOException e) {
+                log.debug("Cannot delete {}", compactFile, e);
+            }
+        }
+    }
+
+    private synchronized void swapIn(Path compactFile, long size, int snapshotRecords) throws IOException {
+        if (channel == null) {
+            return;
+        }
+        long previousSize = logSize;
+        try (FileChannel out = FileChannel.open(compactFile, StandardOpenOption.WRITE)) {
+            for (ByteBuffer record : appendedDuringCompaction) {
+                size += writeFully(out, record, size);
+            }
+            out.force(false);
+        }
+        channel.close();
+        try {
+            Files.move(compactFile, logFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(compactFile, logFile, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            logSize = channel.size();
+        }
+        records = snapshotRecords + appendedDuringCompaction.size();
+        log.info("Content index compacted: {} -> {} bytes, {} entries", previousSize, logSize, entries.size());
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    @Override
+    public synchronized void close() {
+        background.shutdownNow();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Cannot close content index {}", logFile, e);
+            }
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.viking.server.service;
+
+import java.time.Instant;
+
+/**
+ * Metadata of a stored name. {@code version} is what a conditional store
+ * has to match, {@code size} is the content length as stored by the
+ * client, {@code digest} its hex SHA-256. {@code contentType} is
+ * {@code null} if the upload did not declare one.
+ */
+public record ContentInfo(String name, long version, long size, String digest, Instant modified, String contentType) {
+}
@@ -2,12 +2,58 @@ package com.viking.server.service;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
+import com.viking.exception.ContentNotFoundException;
 import com.viking.exception.ValidationException;
 
 import jakarta.activation.DataHandler;
 
 public interface ContentRepository {
-    File loadContent(String name);
-    void storeContent(String name, DataHandler content) throws IOException, ValidationException;
+    /**
+     * The file holding {@code name} as stored.
+     *
+     * @deprecated the file is in the repository's storage format: with
+     * compression on it holds deflated bytes behind a header, not the
+     * content, and a later store of the name retires it. Use
+     * {@link #openContent}, which reads the content itself.
+     */
+    @Deprecated
+    File loadContent(String name) throws ContentNotFoundException;
+    StoredContent openContent(String name) throws IOException, ContentNotFoundException;
+    /** Notes a read of {@code name} served without this repository, such as a hit in a cache in front of it. */
+    default void recordAccess(String name) {
+    }
+    /** {@code ifMatchVersion} of a store that replaces whatever is stored. */
+    long ANY_VERSION = -1;
+    /** {@code ifMatchVersion} of a store that only creates a name that is not stored yet. */
+    long NO_VERSION = 0;
+
+    default void storeContent(String name, DataHandler content) throws IOException, ValidationException {
+        storeContent(name, content, ANY_VERSION);
+    }
+    /**
+     * Stores {@code content} if the version currently stored under {@code name}
+     * is {@code ifMatchVersion}, or unconditionally for {@link #ANY_VERSION}.
+     * Returns the version of the stored content.
+     *
+     * @throws com.viking.exception.VersionConflictException if the version does not match
+     */
+    long storeContent(String name, DataHandler content, long ifMatchVersion) throws IOException, ValidationException;
+    boolean deleteContent(String name) throws IOException;
+    /** Stored names starting with {@code prefix}, all of them for an empty one, in name order. */
+    List<ContentInfo> listContent(String prefix) throws IOException;
+
+    /**
+     * Metadata of {@code name} without opening its content, e.g. to tell
+     * whether a client already holds the current version.
+     */
+    default ContentInfo contentInfo(String name) throws IOException, ContentNotFoundException {
+        for (ContentInfo info : listContent(name)) {
+            if (info.name().equals(name)) {
+                return info;
+            }
+        }
+        throw new ContentNotFoundException(name);
+    }
 }
@@ -1,106 +1,486 @@
 package com.viking.server.service;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.Arrays;
-import java.util.Objects;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.viking.exception.ContentNotFoundException;
 import com.viking.exception.ValidationException;
+import com.viking.exception.ValidationException.Reason;
+import com.viking.exception.VersionConflictException;
+import com.viking.server.metrics.ContentMetrics;
 
 import jakarta.activation.DataHandler;
+import jakarta.activation.FileDataSource;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
+/**
+ * Stores content under a root directory with this layout:
+ * <ul>
+ *   <li>{@code objects/ab/cd/<sha256 of name>}: content stored by name,
+ *   <li>{@code blobs/ab/cd/<sha256 of content>}: deduplicated content, see {@link BlobStore},
+ *   <li>{@code index/}: the {@link ContentIndex} of every name,
+ *   <li>{@code spool/}: uploads in progress,
+ *   <li>{@code uploads/}: chunked uploads being staged, see {@link ChunkedUploadService}.
+ * </ul>
+ * Lookups, listings and the quota are answered from the index. Content files
+ * of the earlier flat layout ({@code <name>.tmp}) are imported on startup
+ * only from an explicitly configured {@code content.store.legacy-dir}, and
+ * only once: they go through the same validation and quota as any store.
+ *
+ * <p>When the quota fills up, stores are rejected unless a
+ * {@link ContentRetention retention policy} that evicts content is set.
+ */
 @Service
 public class ContentRepositoryImpl implements ContentRepository  {
 
     private static final Logger log = LoggerFactory.getLogger(ContentRepositoryImpl.class);
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
-
     static final long MAX_FILE_SIZE = 3 * 1024 * 1024; // 3 MB
     private static final long STORAGE_LIMIT = 10 * 1024 * 1024; // 10 MB free
 
-    @Value("#{ systemProperties['java.io.tmpdir'] }") String fileStorePath;
+    static final String OBJECT_DIR = "objects";
+    private static final String SPOOL_DIR = "spool";
+    private static final String UPLOAD_DIR = "uploads";
+    // content files of the flat layout
+    private static final String LEGACY_SUFFIX = ".tmp";
+    // written to the root once the legacy directory has been imported
+    private static final String LEGACY_IMPORTED_MARKER = "legacy-imported";
+    private static final int NAME_LOCK_STRIPES = 256;
+
+    @Value("${content.store.root:#{systemProperties['java.io.tmpdir']}/viking-content}") String fileStorePath;
+
+    /** Directory holding content of the flat layout to import once; nothing is imported when empty. */
+    @Value("${content.store.legacy-dir:}") String legacyDir = "";
+
+    @Value("${content.store.dedup:false}") boolean dedup = false;
+
+    /** Deflate content that looks compressible; see {@link ContentCompression}. */
+    @Value("${content.store.compression:false}") boolean compression = false;
+
+    /** Platform threads doing the file writes of uploads; 0 writes on the request thread. */
+    @Value("${content.store.disk-io-threads:0}") int diskIoThreads = 0;
+
+    /**
+     * How long a replaced or deleted file stays on disk for loads that looked
+     * it up just before. It stays charged to the quota for as long.
+     */
+    @Value("${content.store.retired-file-grace:PT30S}") Duration retiredFileGrace = Duration.ofSeconds(30);
+
+    /** What happens as the quota fills up: REJECT, LRU or TTL; see {@link ContentRetention}. */
+    @Value("${content.store.retention.policy:REJECT}") ContentRetention.Policy retentionPolicy =
+            ContentRetention.Policy.REJECT;
+
+    @Value("${content.store.retention.ttl:PT24H}") Duration retentionTtl = Duration.ofHours(24);
+
+    /** Fractions of the quota: eviction starts above the high watermark and stops below the low one. */
+    @Value("${content.store.retention.high-watermark:0.9}") double retentionHighWatermark = 0.9;
+
+    @Value("${content.store.retention.low-watermark:0.75}") double retentionLowWatermark = 0.75;
+
+    @Value("${content.store.retention.interval:PT10S}") Duration retentionInterval = Duration.ofSeconds(10);
+
+    @Autowired(required = false) ContentMetrics metrics = ContentMetrics.noop();
+
+    // serialise publishing and deleting per name; uploads and loads never take them
+    private final ReentrantLock[] nameLocks = new ReentrantLock[NAME_LOCK_STRIPES];
+
+    private Path root;
+    private Path spoolDir;
+    private ContentIndex index;
+    private StorageQuota storageQuota;
+    private BlobStore blobStore;
+    private DiskIoExecutor diskIo = DiskIoExecutor.DIRECT;
+    private ScheduledExecutorService retiredFiles;
+    private ContentRetention retention;
+    private Consumer<String> evictionListener = name -> { };
+
+    public ContentRepositoryImpl() {
+        for (int i = 0; i < NAME_LOCK_STRIPES; i++) {
+            nameLocks[i] = new ReentrantLock();
+        }
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        root = Path.of(fileStorePath);
+        spoolDir = root.resolve(SPOOL_DIR);
+        Files.createDirectories(spoolDir);
+        deleteStaleSpools(spoolDir);
+
+        retiredFiles = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "retired-content-files");
+            thread.setDaemon(true);
+            return thread;
+        });
+        index = ContentIndex.open(root.resolve(ContentIndex.INDEX_DIR));
+        blobStore = dedup ? BlobStore.open(root, index) : null;
+        storageQuota = new StorageQuota(STORAGE_LIMIT, index.storedBytes());
+        index.sweepUnreferenced(root, OBJECT_DIR, BlobStore.BLOB_DIR);
+        diskIo = DiskIoExecutor.bounded(diskIoThreads);
+        if (!legacyDir.isBlank()) {
+            importLegacyContent(Path.of(legacyDir));
+        }
+        metrics.registerStorageGauges(storageQuota::used, storageQuota.limit());
+        if (retentionPolicy != ContentRetention.Policy.REJECT) {
+            retention = new ContentRetention(retentionPolicy, retentionTtl, retentionHighWatermark,
+                    retentionLowWatermark, MAX_FILE_SIZE, index, storageQuota, this::evict, metrics);
+            retention.start(retentionInterval);
+        }
+        log.info("Content store opened at {}, {} names, used={} bytes", root.toAbsolutePath(), index.size(),
+                storageQuota.used());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (retention != null) {
+            retention.close();
+        }
+        if (index != null) {
+            index.close();
+        }
+        if (retiredFiles != null) {
+            // files still waiting are swept as unreferenced on the next start
+            retiredFiles.shutdownNow();
+        }
+        diskIo.close();
+    }
+
+    @Override
+    @Deprecated
+    public File loadContent(String name) throws ContentNotFoundException {
+        File file = resolve(name).toFile();
+        if (!file.isFile()) {
+            throw new ContentNotFoundException(name);
+        }
+        recordAccess(name);
+        return file;
+    }
 
     @Override
-    public File loadContent(String name) {
-        return new File(fileStorePath, name + ".tmp");
+    public StoredContent openContent(String name) throws IOException, ContentNotFoundException {
+        ContentIndex.Entry entry = index.find(name);
+        while (entry != null) {
+            try {
+                StoredContent content = describe(name, root.resolve(entry.location()), entry.version(),
+                        entry.digest());
+                recordAccess(name);
+                return content;
+            } catch (NoSuchFileException e) {
+                // the file was retired after the lookup; retry if a newer version replaced it
+                ContentIndex.Entry current = index.find(name);
+                entry = current != null && current.version() != entry.version() ? current : null;
+            }
+        }
+        throw new ContentNotFoundException(name);
     }
 
     @Override
-    public void storeContent(String name, DataHandler handler) throws IOException, ValidationException {
-        validateFileName(name);
+    public void recordAccess(String name) {
+        if (retention != null) {
+            retention.recordRead(name);
+        }
+    }
 
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        long size = 0;
+    /** Called with the name of every content the retention policy evicts, for caches in front of this one. */
+    public void setEvictionListener(Consumer<String> evictionListener) {
+        this.evictionListener = evictionListener;
+    }
 
-        try (InputStream in = new BufferedInputStream(handler.getInputStream())) {
-            byte[] tmp = new byte[8192];
-            int read;
-            while ((read = in.read(tmp)) != -1) {
-                size += read;
-                if (size > MAX_FILE_SIZE) {
-                    throw new ValidationException("File exceeded 3MB limit: " + size + " bytes");
-                }
-                buffer.write(tmp, 0, read);
+    @Override
+    public List<ContentInfo> listContent(String prefix) {
+        return index.list(prefix).stream().map(ContentRepositoryImpl::info).toList();
+    }
+
+    @Override
+    public ContentInfo contentInfo(String name) throws ContentNotFoundException {
+        ContentIndex.Entry entry = index.find(name);
+        if (entry == null) {
+            throw new ContentNotFoundException(name);
+        }
+        return info(entry);
+    }
+
+    private static ContentInfo info(ContentIndex.Entry entry) {
+        return new ContentInfo(entry.name(), entry.version(), entry.size(), entry.digest(),
+                Instant.ofEpochMilli(entry.modified()), entry.contentType());
+    }
+
+    /**
+     * The content held in {@code file}, which is compressed if it starts with
+     * a compression header. {@code digest} is the one recorded at store time.
+     */
+    static StoredContent describe(String name, Path file, long version, String digest) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long diskSize = channel.size();
+            long uncompressedSize = ContentCompression.readUncompressedSize(channel);
+            if (uncompressedSize >= 0) {
+                return new CompressedStoredContent(name, file, uncompressedSize, diskSize, version, digest);
             }
+            return new FileStoredContent(name, file, diskSize, version, digest);
         }
+    }
 
-        validateNotJSON(buffer.toByteArray());
+    @Override
+    public long storeContent(String name, DataHandler handler, long ifMatchVersion)
+            throws IOException, ValidationException {
+        try {
+            return store(name, handler, ifMatchVersion);
+        } catch (ValidationException e) {
+            metrics.recordRejection(e.getReason());
+            if (e.getReason() == Reason.QUOTA && retention != null) {
+                retention.quotaExceeded();
+            }
+            throw e;
+        }
+    }
 
-        validateStorageQuota(size);
+    /**
+     * Spools the upload without any lock, then publishes it under the lock
+     * of its name. Concurrent stores of one name are thereby ordered by
+     * publication: each gets a higher version than the one it replaces, and
+     * the last one to publish wins.
+     */
+    private long store(String name, DataHandler handler, long ifMatchVersion)
+            throws IOException, ValidationException {
+        validateFileName(name);
+        // fail fast before reading the upload; checked again when publishing
+        requireVersion(name, ifMatchVersion);
 
-        File outFile = new File(fileStorePath, name + ".tmp");
-        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outFile))) {
-            buffer.writeTo(out);
+        long version;
+        try (UploadSpool spool = UploadSpool.create(spoolDir, storageQuota, diskIo, blobStore != null)) {
+            try (InputStream in = handler.getInputStream()) {
+                spool.write(in, MAX_FILE_SIZE, new JsonSniffer(), compression);
+            }
+
+            ReentrantLock lock = lockFor(name);
+            lock.lock();
+            try {
+                requireVersion(name, ifMatchVersion);
+                version = index.nextVersion();
+                if (blobStore != null) {
+                    release(blobStore.publish(name, spool, version, handler.getContentType()));
+                    log.info("Content stored successfully: {} v{}, size={}, disk={}, blob={}", name, version,
+                            spool.size(), spool.diskSize(), spool.digest());
+                } else {
+                    String location = objectLocation(name, version);
+                    Path outFile = root.resolve(location);
+                    Files.createDirectories(outFile.getParent());
+                    spool.publish(outFile);
+                    release(index.put(new ContentIndex.Entry(name, location, version, spool.size(),
+                            spool.diskSize(), spool.digest(), System.currentTimeMillis(), handler.getContentType())));
+                    log.info("Content stored successfully: {} v{} at {}, size={}, disk={}", name, version, location,
+                            spool.size(), spool.diskSize());
+                }
+                metrics.recordStore(spool.validationNanos(), spool.writeNanos(), spool.size());
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (retention != null) {
+            retention.stored();
         }
+        return version;
+    }
 
-        log.info("Content stored successfully: {}, size={}", outFile.getAbsolutePath(), size);
+    private void requireVersion(String name, long ifMatchVersion) throws VersionConflictException {
+        if (ifMatchVersion == ANY_VERSION) {
+            return;
+        }
+        ContentIndex.Entry current = index.find(name);
+        long currentVersion = current != null ? current.version() : NO_VERSION;
+        if (currentVersion != ifMatchVersion) {
+            throw new VersionConflictException(name, ifMatchVersion, currentVersion);
+        }
     }
-    
 
-    /* ==================== VALIDATION METHODS ==================== */
+    @Override
+    public boolean deleteContent(String name) throws IOException {
+        ContentIndex.Unlinked removed;
+        ReentrantLock lock = lockFor(name);
+        lock.lock();
+        try {
+            removed = index.remove(name);
+        } finally {
+            lock.unlock();
+        }
+        if (removed == null) {
+            return false;
+        }
+        release(removed);
+        if (retention != null) {
+            retention.forget(name);
+        }
+        log.info("Content deleted: {}", name);
+        return true;
+    }
 
-    void validateFileName(String name) throws ValidationException {
-        if (name.toLowerCase().contains("ж")) {
-            throw new ValidationException("File name contains forbidden letter 'ж': " + name);
+    /** Deletes {@code entry} for the retention policy, unless its name was stored again since. */
+    private boolean evict(ContentIndex.Entry entry) throws IOException {
+        ContentIndex.Unlinked removed;
+        ReentrantLock lock = lockFor(entry.name());
+        lock.lock();
+        try {
+            ContentIndex.Entry current = index.find(entry.name());
+            if (current == null || current.version() != entry.version()) {
+                return false;
+            }
+            removed = index.remove(entry.name());
+        } finally {
+            lock.unlock();
         }
+        release(removed);
+        evictionListener.accept(entry.name());
+        log.debug("Content evicted: {} v{}", entry.name(), entry.version());
+        return true;
     }
 
-    void validateNotJSON(byte[] content) throws ValidationException {
+    /**
+     * Schedules the deletion of the file a name stopped pointing at, unless
+     * other names still point at it. The file outlives the grace period so
+     * that loads which looked it up just before are not cut off, and stays
+     * charged to the quota until then.
+     */
+    private void release(ContentIndex.Unlinked unlinked) {
+        if (unlinked == null || !unlinked.orphaned()) {
+            return;
+        }
+        long diskSize = unlinked.entry().diskSize();
+        storageQuota.retire(diskSize);
+        String location = unlinked.entry().location();
+        retiredFiles.schedule(() -> deleteRetired(location, diskSize), retiredFileGrace.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Deletes a retired file and credits it. A blob that was stored again
+     * meanwhile is kept, but the upload that brought it back paid for it.
+     */
+    private void deleteRetired(String location, long diskSize) {
         try {
-            objectMapper.readTree(content);
-            throw new ValidationException("File contains valid JSON (not allowed)");
-        } catch (JsonProcessingException e) {
-            // Good: not JSON
+            if (blobStore != null) {
+                blobStore.deleteIfUnreferenced(location);
+            } else if (!index.isReferenced(location)) {
+                Files.deleteIfExists(root.resolve(location));
+            }
+            storageQuota.free(diskSize);
         } catch (IOException e) {
-            throw new ValidationException("Error reading content: " + e.getMessage());
+            // still on disk, so still charged; the next start sweeps it
+            log.warn("Cannot delete retired file {}", location, e);
         }
     }
 
-    void validateStorageQuota(long newFileSize) throws ValidationException {
-        File storeDir = new File(fileStorePath);
-        long currentSize = Arrays.stream(Objects.requireNonNull(storeDir.listFiles()))
-            .filter(File::isFile)
-            .mapToLong(File::length)
-            .sum();
-        if (currentSize + newFileSize > STORAGE_LIMIT) {
-            throw new ValidationException(
-                String.format("Storage quota exceeded. Used: %d bytes, limit: %d bytes",
-                 currentSize, STORAGE_LIMIT)
-            );
+    private ReentrantLock lockFor(String name) {
+        return nameLocks[(name.hashCode() & 0x7fffffff) % NAME_LOCK_STRIPES];
+    }
+
+    /** Every version of a name gets its own file, so a file never changes once readers can see it. */
+    private static String objectLocation(String name, long version) {
+        return ContentIndex.shardedLocation(OBJECT_DIR, ContentIndex.nameHash(name)) + '-' + version;
+    }
+
+    /** File holding the content stored under {@code name}. */
+    private Path resolve(String name) throws ContentNotFoundException {
+        ContentIndex.Entry entry = index.find(name);
+        if (entry == null) {
+            throw new ContentNotFoundException(name);
         }
+        return root.resolve(entry.location());
+    }
+
+    /** Bytes currently counted against the storage quota. */
+    long usedBytes() {
+        return storageQuota.used();
+    }
+
+    /** The quota of this store, for staging areas that hold content before it is stored. */
+    StorageQuota storageQuota() {
+        return storageQuota;
+    }
+
+    /** Where chunked uploads are staged: under the root, so they sit on the same file system as the content. */
+    Path uploadDir() {
+        return root.resolve(UPLOAD_DIR);
+    }
+
+    private static void deleteStaleSpools(Path spoolDir) throws IOException {
+        try (DirectoryStream<Path> spools = Files.newDirectoryStream(spoolDir,
+                UploadSpool.PREFIX + "*" + UploadSpool.SUFFIX)) {
+            for (Path spool : spools) {
+                Files.deleteIfExists(spool);
+            }
+        }
+    }
+
+    /**
+     * Stores every {@code <name>.tmp} in {@code dir} as {@code name} and
+     * deletes the files that were taken. Files that fail validation or do
+     * not fit the quota are left where they are. A marker in the root keeps
+     * later starts from importing again.
+     */
+    private void importLegacyContent(Path dir) throws IOException {
+        Path marker = root.resolve(LEGACY_IMPORTED_MARKER);
+        if (Files.exists(marker)) {
+            return;
+        }
+        int imported = 0;
+        int rejected = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + LEGACY_SUFFIX)) {
+            for (Path file : files) {
+                if (!Files.isRegularFile(file)) {
+                    continue;
+                }
+                String fileName = file.getFileName().toString();
+                String name = fileName.substring(0, fileName.length() - LEGACY_SUFFIX.length());
+                try {
+                    store(name, new DataHandler(new FileDataSource(file.toFile())), ANY_VERSION);
+                    Files.delete(file);
+                    imported++;
+                } catch (ValidationException e) {
+                    log.warn("Legacy file {} not imported: {}", file, e.getMessage());
+                    rejected++;
+                }
+            }
+        }
+        Files.writeString(marker, dir.toAbsolutePath() + System.lineSeparator());
+        log.info("Imported {} files of the flat layout from {}, {} rejected", imported, dir, rejected);
+    }
+
+
+    /* ==================== VALIDATION METHODS ==================== */
+
+    void validateFileName(String name) throws ValidationException {
+        if (name.toLowerCase().contains("ж")) {
+            throw new ValidationException(Reason.FILE_NAME,
+                    "File name contains forbidden letter 'ж': " + name);
+        }
+    }
+
+    void validateNotJSON(byte[] content) throws ValidationException {
+        JsonSniffer sniffer = new JsonSniffer();
+        sniffer.feed(content, 0, content.length);
+        sniffer.finish();
+        sniffer.requireNotJson();
     }
 }
@@ -0,0 +1,221 @@
+package com.viking.server.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.viking.server.metrics.ContentMetrics;
+
+/**
+ * Drops stored content to keep the quota from filling up, for repositories
+ * used as a cache rather than as a store of record.
+ *
+ * <p>Under {@link Policy#LRU} the names read least recently go first. Read
+ * times are kept in memory only: nothing is written on a load, and after a
+ * restart a name counts as read when it was last stored. Under
+ * {@link Policy#TTL} a name expires once it has been stored for longer than
+ * the TTL, and under pressure the names closest to expiry go first.
+ *
+ * <p>Eviction runs on its own thread. Once usage passes the high
+ * watermark, it drops content until usage is back under the low watermark,
+ * so there is room for stores before they need it. Both watermarks are
+ * capped to leave {@code headroom} free, the most one store can take, so a
+ * full-size store always fits below the high watermark. A store that finds
+ * the quota full still fails with the quota error instead of waiting, but
+ * has the next pass evict down to the low watermark, whatever the usage.
+ */
+class ContentRetention implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ContentRetention.class);
+
+    enum Policy {
+        /** Keep everything; stores fail once the quota is full. */
+        REJECT,
+        /** Evict the least recently read content. */
+        LRU,
+        /** Expire content some time after it was stored. */
+        TTL
+    }
+
+    /** Removes an entry if its name still holds that version; {@code false} if it changed meanwhile. */
+    @FunctionalInterface
+    interface Evictor {
+        boolean evict(ContentIndex.Entry entry) throws IOException;
+    }
+
+    private record Candidate(ContentIndex.Entry entry, long rank) {
+    }
+
+    private final Policy policy;
+    private final Duration ttl;
+    private final ContentIndex index;
+    private final StorageQuota quota;
+    private final long highWatermark;
+    private final long lowWatermark;
+    private final Evictor evictor;
+    private final ContentMetrics metrics;
+
+    private final Map<String, Long> lastRead = new ConcurrentHashMap<>();
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+    private final AtomicBoolean quotaExceeded = new AtomicBoolean();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "content-retention");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Watermarks are fractions of the quota limit; {@code headroom} is the largest single store in bytes. */
+    ContentRetention(Policy policy, Duration ttl, double highWatermark, double lowWatermark, long headroom,
+            ContentIndex index, StorageQuota quota, Evictor evictor, ContentMetrics metrics) {
+        if (policy == Policy.REJECT) {
+            throw new IllegalArgumentException("Nothing to retain under the REJECT policy");
+        }
+        if (!(0 < lowWatermark && lowWatermark <= highWatermark && highWatermark <= 1)) {
+            throw new IllegalArgumentException(
+                    "Watermarks must satisfy 0 < low <= high <= 1: " + lowWatermark + ", " + highWatermark);
+        }
+        long ceiling = quota.limit() - headroom;
+        if (ceiling <= 0) {
+            throw new IllegalArgumentException(
+                    "Quota of " + quota.limit() + " bytes leaves no room for stores of " + headroom + " bytes");
+        }
+        this.policy = policy;
+        this.ttl = ttl;
+        this.index = index;
+        this.quota = quota;
+        long high = (long) (quota.limit() * highWatermark);
+        if (high > ceiling) {
+            log.info("High watermark lowered from {} to {} bytes to leave room for a {} byte store", high, ceiling,
+                    headroom);
+            high = ceiling;
+        }
+        this.highWatermark = high;
+        this.lowWatermark = Math.min((long) (quota.limit() * lowWatermark), high);
+        this.evictor = evictor;
+        this.metrics = metrics;
+    }
+
+    void start(Duration interval) {
+        long millis = interval.toMillis();
+        executor.scheduleWithFixedDelay(this::runSafely, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    void recordRead(String name) {
+        lastRead.put(name, System.currentTimeMillis());
+    }
+
+    void forget(String name) {
+        lastRead.remove(name);
+    }
+
+    /** Called after a store; wakes the eviction up if usage went past the high watermark. */
+    void stored() {
+        if (usage() > highWatermark) {
+            wakeUp();
+        }
+    }
+
+    /** Called when a store was rejected for quota; the next pass evicts down to the low watermark. */
+    void quotaExceeded() {
+        quotaExceeded.set(true);
+        wakeUp();
+    }
+
+    /** Runs an eviction pass soon, unless one is already pending. */
+    void wakeUp() {
+        if (wakeUpPending.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> {
+                    wakeUpPending.set(false);
+                    runSafely();
+                });
+            } catch (RuntimeException e) {
+                // shut down
+                wakeUpPending.set(false);
+            }
+        }
+    }
+
+    /**
+     * Drops expired content, then content in policy order while usage is
+     * above the watermarks, or above the low one after a quota rejection.
+     */
+    int evict() throws IOException {
+        boolean rejected = quotaExceeded.getAndSet(false);
+        int evicted = 0;
+        if (policy == Policy.TTL) {
+            long expiredBefore = System.currentTimeMillis() - ttl.toMillis();
+            for (ContentIndex.Entry entry : index.list("")) {
+                if (entry.modified() < expiredBefore && evict(entry, true)) {
+                    evicted++;
+                }
+            }
+        }
+        if (rejected || usage() > highWatermark) {
+            // ranks are taken once, so reads during the sort cannot reorder it
+            List<Candidate> candidates = new ArrayList<>();
+            for (ContentIndex.Entry entry : index.list("")) {
+                candidates.add(new Candidate(entry, rank(entry)));
+            }
+            candidates.sort(Comparator.comparingLong(Candidate::rank));
+            for (int i = 0; i < candidates.size() && usage() > lowWatermark; i++) {
+                if (evict(candidates.get(i).entry(), false)) {
+                    evicted++;
+                }
+            }
+        }
+        return evicted;
+    }
+
+    private boolean evict(ContentIndex.Entry entry, boolean expired) throws IOException {
+        if (!evictor.evict(entry)) {
+            return false;
+        }
+        lastRead.remove(entry.name());
+        metrics.recordEviction(expired);
+        return true;
+    }
+
+    /**
+     * Usage the watermarks are checked against. Retired files are on their
+     * way out already, and evicting more would not delete them any sooner.
+     */
+    private long usage() {
+        return quota.used() - quota.retired();
+    }
+
+    /** Lower ranks are evicted first. */
+    private long rank(ContentIndex.Entry entry) {
+        if (policy == Policy.LRU) {
+            return Math.max(entry.modified(), lastRead.getOrDefault(entry.name(), 0L));
+        }
+        return entry.modified();
+    }
+
+    private void runSafely() {
+        try {
+            int evicted = evict();
+            if (evicted > 0) {
+                log.info("Retention policy {} evicted {} names, used={} bytes", policy, evicted, quota.used());
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Eviction failed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
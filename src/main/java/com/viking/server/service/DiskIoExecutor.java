@@ -0,0 +1,90 @@
+package com.viking.server.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs blocking file writes either on the calling thread or on a small pool
+ * of platform threads.
+ *
+ * <p>File I/O cannot unmount a virtual thread: the JDK pins its carrier and
+ * briefly grows the carrier pool to compensate. When requests run on
+ * virtual threads, handing each write to this bounded pool keeps the number
+ * of threads blocked in the file system fixed, while the request thread
+ * waits on the result and unmounts like it does for network reads.
+ */
+final class DiskIoExecutor implements AutoCloseable {
+
+    @FunctionalInterface
+    interface IoTask {
+        void run() throws IOException;
+    }
+
+    /** Runs every task on the calling thread. */
+    static final DiskIoExecutor DIRECT = new DiskIoExecutor(null);
+
+    private final ExecutorService executor;
+
+    private DiskIoExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /** A pool of {@code threads} platform threads, or {@link #DIRECT} for 0. */
+    static DiskIoExecutor bounded(int threads) {
+        if (threads <= 0) {
+            return DIRECT;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        return new DiskIoExecutor(Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "disk-io-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    void run(IoTask task) throws IOException {
+        if (executor == null) {
+            task.run();
+            return;
+        }
+        Future<?> result = executor.submit(() -> {
+            try {
+                task.run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        try {
+            result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for disk I/O");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.viking.server.service;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** Content held in a file of the content store. */
+record FileStoredContent(String name, Path path, long size, long version, String digest) implements StoredContent {
+
+    @Override
+    public FileChannel openChannel() throws IOException {
+        return FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    @Override
+    public FileChannel openChannel(long position) throws IOException {
+        FileChannel channel = openChannel();
+        channel.position(position);
+        return channel;
+    }
+}
@@ -0,0 +1,73 @@
+package com.viking.server.service;
+
+/**
+ * Approximate access counts for the cache admission filter, in the spirit of
+ * TinyLFU: a count-min sketch of four rows of small saturating counters that
+ * are halved periodically, so old popularity fades away.
+ *
+ * <p>Updates are not synchronized. A lost increment under contention only
+ * makes an estimate slightly lower, which the admission filter tolerates.
+ */
+class FrequencySketch {
+
+    private static final int MAX_COUNT = 15;
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    private final int[][] rows;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int expectedEntries) {
+        int width = Integer.highestOneBit(Math.max(64, expectedEntries - 1) << 1);
+        this.rows = new int[SEEDS.length][width];
+        this.mask = width - 1;
+        this.sampleSize = 10 * width;
+    }
+
+    int frequency(String key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < rows.length; row++) {
+            frequency = Math.min(frequency, rows[row][indexOf(hash, row)]);
+        }
+        return frequency;
+    }
+
+    void increment(String key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < rows.length; row++) {
+            int index = indexOf(hash, row);
+            if (rows[row][index] < MAX_COUNT) {
+                rows[row][index]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        additions = 0;
+        for (int[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>>= 1;
+            }
+        }
+    }
+
+    private int indexOf(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return (int) h & mask;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
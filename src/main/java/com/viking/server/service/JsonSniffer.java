@@ -0,0 +1,598 @@
+package com.viking.server.service;
+
+import com.viking.exception.ValidationException;
+import com.viking.exception.ValidationException.Reason;
+
+/**
+ * Single-pass detector that decides whether an upload is a JSON document,
+ * fed chunk by chunk from the upload copy loop.
+ *
+ * <p>The verdicts follow {@code ObjectMapper.readTree} with default settings:
+ * the content is JSON when its first root value parses, trailing data is not
+ * inspected, and empty or whitespace-only content counts as JSON. Encoding
+ * detection, literal and root-number termination and the default
+ * {@code StreamReadConstraints} limits mirror Jackson's parser. Only a token
+ * level state machine and a nesting bit stack are kept, no tree is built,
+ * and the detector stops consuming input as soon as the verdict is known,
+ * which for binary content is the first non-whitespace byte.
+ */
+final class JsonSniffer {
+
+    enum Verdict { UNDECIDED, JSON, NOT_JSON, UNREADABLE }
+
+    // Jackson's default StreamReadConstraints
+    static final int MAX_DEPTH = 1000;
+    static final int MAX_NUMBER_LENGTH = 1000;
+    static final int MAX_NAME_LENGTH = 50_000;
+    static final int MAX_STRING_LENGTH = 20_000_000;
+
+    private enum Encoding { UTF8, UTF16_BE, UTF16_LE, UTF32_BE, UTF32_LE }
+
+    private static final int EOF = -1;
+    private static final int INVALID = -2;
+    private static final int REPLACEMENT_CHAR = 0xFFFD;
+
+    // grammar states
+    private static final int VALUE = 0;
+    private static final int ARRAY_FIRST = 1;
+    private static final int OBJECT_FIRST = 2;
+    private static final int OBJECT_KEY = 3;
+    private static final int COLON = 4;
+    private static final int AFTER_VALUE = 5;
+    private static final int STRING = 6;
+    private static final int ESCAPE = 7;
+    private static final int UNICODE_ESCAPE = 8;
+    private static final int LITERAL = 9;
+    private static final int LITERAL_END = 10;
+    private static final int NUM_MINUS = 11;
+    private static final int NUM_ZERO = 12;
+    private static final int NUM_INT = 13;
+    private static final int NUM_DOT = 14;
+    private static final int NUM_FRAC = 15;
+    private static final int NUM_EXP_START = 16;
+    private static final int NUM_EXP_SIGN = 17;
+    private static final int NUM_EXP = 18;
+
+    private Verdict verdict = Verdict.UNDECIDED;
+
+    // encoding detection and decoding
+    private final byte[] head = new byte[4];
+    private int headLength;
+    private Encoding encoding;
+    private int pending;
+    private int pendingBytes;
+    private int utf8Needed;
+
+    // grammar
+    private int state = VALUE;
+    private final long[] containers = new long[(MAX_DEPTH + 63) / 64];
+    private int depth;
+    private boolean keyString;
+    private int stringLength;
+    private int escapeDigits;
+    private String literal;
+    private int literalIndex;
+    private int intLength;
+    private int fractionLength;
+    private int exponentLength;
+
+    boolean isDecided() {
+        return verdict != Verdict.UNDECIDED;
+    }
+
+    Verdict verdict() {
+        return verdict;
+    }
+
+    Verdict feed(byte[] data, int offset, int length) {
+        int position = offset;
+        int end = offset + length;
+        if (encoding == null) {
+            while (position < end && headLength < head.length) {
+                head[headLength++] = data[position++];
+            }
+            if (headLength < head.length) {
+                return verdict;
+            }
+            detectEncoding();
+        }
+        decode(data, position, end);
+        return verdict;
+    }
+
+    /** Signals the end of the content and returns the final verdict. */
+    Verdict finish() {
+        if (verdict != Verdict.UNDECIDED) {
+            return verdict;
+        }
+        if (encoding == null) {
+            detectEncoding();
+            if (verdict != Verdict.UNDECIDED) {
+                return verdict;
+            }
+        }
+        if (pendingBytes > 0) {
+            switch (encoding) {
+                case UTF8 -> accept(INVALID);
+                case UTF16_BE, UTF16_LE -> accept(REPLACEMENT_CHAR);
+                case UTF32_BE, UTF32_LE -> verdict = Verdict.UNREADABLE;
+            }
+            if (verdict != Verdict.UNDECIDED) {
+                return verdict;
+            }
+        }
+        accept(EOF);
+        return verdict;
+    }
+
+    /** Throws if the verdict so far rejects the content. */
+    void requireNotJson() throws ValidationException {
+        switch (verdict) {
+            case JSON -> throw new ValidationException(Reason.JSON_CONTENT,
+                    "File contains valid JSON (not allowed)");
+            case UNREADABLE -> throw new ValidationException(Reason.UNREADABLE_CONTENT,
+                    "Error reading content: unsupported or malformed character encoding");
+            default -> { }
+        }
+    }
+
+    /* ==================== ENCODING ==================== */
+
+    private void detectEncoding() {
+        int skip = 0;
+        if (headLength == 4) {
+            int quad = ((head[0] & 0xFF) << 24) | ((head[1] & 0xFF) << 16) | ((head[2] & 0xFF) << 8) | (head[3] & 0xFF);
+            if (quad == 0x0000FEFF) {
+                encoding = Encoding.UTF32_BE;
+                skip = 4;
+            } else if (quad == 0xFFFE0000) {
+                encoding = Encoding.UTF32_LE;
+                skip = 4;
+            } else if (quad == 0x0000FFFE || quad == 0xFEFF0000) {
+                verdict = Verdict.UNREADABLE;
+                return;
+            } else if ((quad >>> 16) == 0xFEFF) {
+                encoding = Encoding.UTF16_BE;
+                skip = 2;
+            } else if ((quad >>> 16) == 0xFFFE) {
+                encoding = Encoding.UTF16_LE;
+                skip = 2;
+            } else if ((quad >>> 8) == 0xEFBBBF) {
+                encoding = Encoding.UTF8;
+                skip = 3;
+            } else if ((quad >> 8) == 0) {
+                encoding = Encoding.UTF32_BE;
+            } else if ((quad & 0x00FFFFFF) == 0) {
+                encoding = Encoding.UTF32_LE;
+            } else if ((quad & ~0x00FF0000) == 0 || (quad & ~0x0000FF00) == 0) {
+                // unusual UCS-4 byte orders that Jackson refuses to read
+                verdict = Verdict.UNREADABLE;
+                return;
+            } else {
+                encoding = utf16OrUtf8(quad >>> 16);
+            }
+        } else if (headLength >= 2) {
+            encoding = utf16OrUtf8(((head[0] & 0xFF) << 8) | (head[1] & 0xFF));
+        } else {
+            encoding = Encoding.UTF8;
+        }
+        decode(head, skip, headLength);
+    }
+
+    private static Encoding utf16OrUtf8(int firstTwoBytes) {
+        if ((firstTwoBytes & 0xFF00) == 0) {
+            return Encoding.UTF16_BE;
+        }
+        if ((firstTwoBytes & 0x00FF) == 0) {
+            return Encoding.UTF16_LE;
+        }
+        return Encoding.UTF8;
+    }
+
+    private void decode(byte[] data, int from, int to) {
+        switch (encoding) {
+            case UTF8 -> decodeUtf8(data, from, to);
+            case UTF16_BE, UTF16_LE -> decodeUtf16(data, from, to, encoding == Encoding.UTF16_BE);
+            case UTF32_BE, UTF32_LE -> decodeUtf32(data, from, to, encoding == Encoding.UTF32_BE);
+        }
+    }
+
+    private void decodeUtf8(byte[] data, int from, int to) {
+        for (int i = from; i < to && verdict == Verdict.UNDECIDED; i++) {
+            int b = data[i] & 0xFF;
+            if (utf8Needed > 0) {
+                if ((b & 0xC0) != 0x80) {
+                    resetPending();
+                    accept(INVALID);
+                } else {
+                    pending = (pending << 6) | (b & 0x3F);
+                    pendingBytes++;
+                    if (--utf8Needed == 0) {
+                        int codePoint = pending;
+                        resetPending();
+                        accept(codePoint);
+                    }
+                }
+            } else if (b < 0x80) {
+                accept(b);
+            } else if ((b & 0xE0) == 0xC0) {
+                startUtf8Sequence(b & 0x1F, 1);
+            } else if ((b & 0xF0) == 0xE0) {
+                startUtf8Sequence(b & 0x0F, 2);
+            } else if ((b & 0xF8) == 0xF0) {
+                startUtf8Sequence(b & 0x07, 3);
+            } else {
+                accept(INVALID);
+            }
+        }
+    }
+
+    private void startUtf8Sequence(int bits, int continuationBytes) {
+        pending = bits;
+        pendingBytes = 1;
+        utf8Needed = continuationBytes;
+    }
+
+    private void decodeUtf16(byte[] data, int from, int to, boolean bigEndian) {
+        for (int i = from; i < to && verdict == Verdict.UNDECIDED; i++) {
+            int b = data[i] & 0xFF;
+            if (pendingBytes == 0) {
+                pending = b;
+                pendingBytes = 1;
+            } else {
+                int unit = bigEndian ? (pending << 8) | b : (b << 8) | pending;
+                resetPending();
+                accept(unit);
+            }
+        }
+    }
+
+    private void decodeUtf32(byte[] data, int from, int to, boolean bigEndian) {
+        for (int i = from; i < to && verdict == Verdict.UNDECIDED; i++) {
+            int b = data[i] & 0xFF;
+            pending = bigEndian ? (pending << 8) | b : pending | (b << (8 * pendingBytes));
+            if (++pendingBytes == 4) {
+                int codePoint = pending;
+                resetPending();
+                if (codePoint < 0 || codePoint > Character.MAX_CODE_POINT) {
+                    verdict = Verdict.UNREADABLE;
+                } else if (codePoint > 0xFFFF) {
+                    // Jackson's UTF-32 reader hands the parser a surrogate pair
+                    accept(Character.highSurrogate(codePoint));
+                    if (verdict == Verdict.UNDECIDED) {
+                        accept(Character.lowSurrogate(codePoint));
+                    }
+                } else {
+                    accept(codePoint);
+                }
+            }
+        }
+    }
+
+    private void resetPending() {
+        pending = 0;
+        pendingBytes = 0;
+        utf8Needed = 0;
+    }
+
+    /* ==================== GRAMMAR ==================== */
+
+    private void accept(int c) {
+        // a character that terminates a number or literal is processed again in the state that follows
+        while (true) {
+            switch (state) {
+                case VALUE:
+                    if (isWhitespace(c)) {
+                        return;
+                    }
+                    if (c == EOF && depth == 0) {
+                        // empty document: readTree returns a MissingNode
+                        verdict = Verdict.JSON;
+                        return;
+                    }
+                    startValue(c);
+                    return;
+                case ARRAY_FIRST:
+                    if (isWhitespace(c)) {
+                        return;
+                    }
+                    if (c == ']') {
+                        closeContainer();
+                        return;
+                    }
+                    startValue(c);
+                    return;
+                case OBJECT_FIRST:
+                case OBJECT_KEY:
+                    if (isWhitespace(c)) {
+                        return;
+                    }
+                    if (c == '}' && state == OBJECT_FIRST) {
+                        closeContainer();
+                    } else if (c == '"') {
+                        startString(true);
+                    } else {
+                        notJson();
+                    }
+                    return;
+                case COLON:
+                    if (isWhitespace(c)) {
+                        return;
+                    }
+                    if (c == ':') {
+                        state = VALUE;
+                    } else {
+                        notJson();
+                    }
+                    return;
+                case AFTER_VALUE:
+                    if (isWhitespace(c)) {
+                        return;
+                    }
+                    if (c == ',') {
+                        state = inObject() ? OBJECT_KEY : VALUE;
+                    } else if (c == (inObject() ? '}' : ']')) {
+                        closeContainer();
+                    } else {
+                        notJson();
+                    }
+                    return;
+                case STRING:
+                    if (c == '"') {
+                        endString();
+                    } else if (c == '\\') {
+                        state = ESCAPE;
+                    } else if (c < 0x20) {
+                        // unescaped control character, malformed input or end of content
+                        notJson();
+                    } else {
+                        countStringChars(c > 0xFFFF ? 2 : 1);
+                    }
+                    return;
+                case ESCAPE:
+                    switch (c) {
+                        case '"', '\\', '/', 'b', 'f', 'n', 'r', 't' -> {
+                            state = STRING;
+                            countStringChars(1);
+                        }
+                        case 'u' -> {
+                            escapeDigits = 0;
+                            state = UNICODE_ESCAPE;
+                        }
+                        default -> notJson();
+                    }
+                    return;
+                case UNICODE_ESCAPE:
+                    if (!isHexDigit(c)) {
+                        notJson();
+                    } else if (++escapeDigits == 4) {
+                        state = STRING;
+                        countStringChars(1);
+                    }
+                    return;
+                case LITERAL:
+                    if (c != literal.charAt(literalIndex)) {
+                        notJson();
+                    } else if (++literalIndex == literal.length()) {
+                        state = LITERAL_END;
+                    }
+                    return;
+                case LITERAL_END:
+                    // like Jackson, reject "trueish" but accept "true," or "true:" as a complete token
+                    if (c == INVALID || (c >= '0' && c != ']' && c != '}' && Character.isJavaIdentifierPart((char) c))) {
+                        notJson();
+                        return;
+                    }
+                    valueEnded();
+                    if (verdict != Verdict.UNDECIDED) {
+                        return;
+                    }
+                    continue;
+                case NUM_MINUS:
+                    if (c == '0') {
+                        intLength = 1;
+                        state = NUM_ZERO;
+                    } else if (isDigit(c)) {
+                        intLength = 1;
+                        state = NUM_INT;
+                    } else {
+                        notJson();
+                    }
+                    return;
+                case NUM_ZERO:
+                    if (isDigit(c)) {
+                        // leading zeroes are not allowed
+                        notJson();
+                        return;
+                    }
+                    if (continueNumber(c)) {
+                        return;
+                    }
+                    break;
+                case NUM_INT:
+                    if (isDigit(c)) {
+                        intLength++;
+                        return;
+                    }
+                    if (continueNumber(c)) {
+                        return;
+                    }
+                    break;
+                case NUM_DOT:
+                    if (isDigit(c)) {
+                        fractionLength = 1;
+                        state = NUM_FRAC;
+                    } else {
+                        notJson();
+                    }
+                    return;
+                case NUM_FRAC:
+                    if (isDigit(c)) {
+                        fractionLength++;
+                        return;
+                    }
+                    if (c == 'e' || c == 'E') {
+                        state = NUM_EXP_START;
+                        return;
+                    }
+                    break;
+                case NUM_EXP_START:
+                    if (c == '+' || c == '-') {
+                        state = NUM_EXP_SIGN;
+                    } else if (isDigit(c)) {
+                        exponentLength = 1;
+                        state = NUM_EXP;
+                    } else {
+                        notJson();
+                    }
+                    return;
+                case NUM_EXP_SIGN:
+                    if (isDigit(c)) {
+                        exponentLength = 1;
+                        state = NUM_EXP;
+                    } else {
+                        notJson();
+                    }
+                    return;
+                case NUM_EXP:
+                    if (isDigit(c)) {
+                        exponentLength++;
+                        return;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown state " + state);
+            }
+
+            // c terminated a number
+            if (!endNumber(c)) {
+                return;
+            }
+        }
+    }
+
+    private void startValue(int c) {
+        switch (c) {
+            case '{' -> openContainer(true);
+            case '[' -> openContainer(false);
+            case '"' -> startString(false);
+            case '-' -> startNumber(NUM_MINUS, 0);
+            case '0' -> startNumber(NUM_ZERO, 1);
+            case '1', '2', '3', '4', '5', '6', '7', '8', '9' -> startNumber(NUM_INT, 1);
+            case 't' -> startLiteral("true");
+            case 'f' -> startLiteral("false");
+            case 'n' -> startLiteral("null");
+            default -> notJson();
+        }
+    }
+
+    private void openContainer(boolean object) {
+        if (depth == MAX_DEPTH) {
+            notJson();
+            return;
+        }
+        int slot = depth >> 6;
+        long bit = 1L << (depth & 63);
+        containers[slot] = object ? containers[slot] | bit : containers[slot] & ~bit;
+        depth++;
+        state = object ? OBJECT_FIRST : ARRAY_FIRST;
+    }
+
+    private boolean inObject() {
+        int top = depth - 1;
+        return (containers[top >> 6] & (1L << (top & 63))) != 0;
+    }
+
+    private void closeContainer() {
+        depth--;
+        valueEnded();
+    }
+
+    private void valueEnded() {
+        if (depth == 0) {
+            verdict = Verdict.JSON;
+        } else {
+            state = AFTER_VALUE;
+        }
+    }
+
+    private void startString(boolean key) {
+        keyString = key;
+        stringLength = 0;
+        state = STRING;
+    }
+
+    private void endString() {
+        if (keyString) {
+            state = COLON;
+        } else {
+            valueEnded();
+        }
+    }
+
+    private void countStringChars(int chars) {
+        stringLength += chars;
+        if (stringLength > (keyString ? MAX_NAME_LENGTH : MAX_STRING_LENGTH)) {
+            notJson();
+        }
+    }
+
+    private void startLiteral(String expected) {
+        literal = expected;
+        literalIndex = 1;
+        state = LITERAL;
+    }
+
+    private void startNumber(int numberState, int digits) {
+        intLength = digits;
+        fractionLength = 0;
+        exponentLength = 0;
+        state = numberState;
+    }
+
+    /** Handles '.', 'e' and 'E' after the integer part; returns false if {@code c} ends the number. */
+    private boolean continueNumber(int c) {
+        if (c == '.') {
+            state = NUM_DOT;
+            return true;
+        }
+        if (c == 'e' || c == 'E') {
+            state = NUM_EXP_START;
+            return true;
+        }
+        return false;
+    }
+
+    /** Completes a number terminated by {@code c}; returns true if {@code c} must be processed again. */
+    private boolean endNumber(int c) {
+        boolean floatingPoint = fractionLength > 0 || exponentLength > 0;
+        int length = floatingPoint ? intLength + fractionLength + exponentLength : intLength;
+        if (length > MAX_NUMBER_LENGTH) {
+            notJson();
+            return false;
+        }
+        if (depth == 0) {
+            // a root-level number must be followed by white space or the end of content
+            verdict = c == EOF || isWhitespace(c) ? Verdict.JSON : Verdict.NOT_JSON;
+            return false;
+        }
+        state = AFTER_VALUE;
+        return true;
+    }
+
+    private void notJson() {
+        verdict = Verdict.NOT_JSON;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isHexDigit(int c) {
+        return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+}
@@ -0,0 +1,85 @@
+package com.viking.server.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.viking.exception.ValidationException;
+import com.viking.exception.ValidationException.Reason;
+
+/**
+ * Keeps a running total of the bytes held by the repository so that uploads
+ * do not have to list the store directory.
+ *
+ * <p>The total covers committed content plus the bytes reserved by uploads
+ * that are still in flight. Replaced and deleted content stays charged
+ * while its retired file is on disk, so the total never falls below what
+ * the store actually holds. {@link #reserve(long)} is a single CAS on that
+ * total, so concurrent stores can never overshoot the limit together.
+ * The total starts from what the content index holds and is only ever
+ * moved by the repository's own stores and deletes; it is not rescanned,
+ * as a scan racing them could only read it wrong.
+ */
+class StorageQuota {
+
+    private final long limit;
+
+    // committed + reserved bytes, the value every reservation is checked against
+    private final AtomicLong total = new AtomicLong();
+    // committed bytes of retired files that are still on disk
+    private final AtomicLong retired = new AtomicLong();
+
+    /** {@code used} is the bytes the store holds already. */
+    StorageQuota(long limit, long used) {
+        this.limit = limit;
+        this.total.set(used);
+    }
+
+    long limit() {
+        return limit;
+    }
+
+    /** Bytes currently committed or reserved. */
+    long used() {
+        return total.get();
+    }
+
+    void reserve(long bytes) throws ValidationException {
+        long current;
+        do {
+            current = total.get();
+            if (current + bytes > limit) {
+                throw new ValidationException(Reason.QUOTA,
+                    String.format("Storage quota exceeded. Used: %d bytes, limit: %d bytes", current, limit));
+            }
+        } while (!total.compareAndSet(current, current + bytes));
+    }
+
+    /** Bytes of retired files that are still on disk; they count towards {@link #used()}. */
+    long retired() {
+        return retired.get();
+    }
+
+    /**
+     * Marks committed bytes as belonging to a file no name points at any
+     * more. They stay charged until the file is deleted and {@link #free}d.
+     */
+    void retire(long bytes) {
+        if (bytes > 0) {
+            retired.addAndGet(bytes);
+        }
+    }
+
+    /** Credits retired bytes whose file has been deleted. */
+    void free(long bytes) {
+        if (bytes > 0) {
+            retired.addAndGet(-bytes);
+            total.addAndGet(-bytes);
+        }
+    }
+
+    /** Gives back a reservation that was not stored; a stored one simply stays charged. */
+    void release(long reservedBytes) {
+        if (reservedBytes > 0) {
+            total.addAndGet(-reservedBytes);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.viking.server.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Descriptor of a stored object. The content itself is only opened when a
+ * caller asks for a channel, and every call returns a fresh channel that the
+ * caller must close.
+ */
+public interface StoredContent {
+
+    String name();
+
+    /** Size of the content in bytes. */
+    long size();
+
+    /** Version of the content as assigned by the repository, or 0 if it is not versioned. */
+    default long version() {
+        return 0;
+    }
+
+    /**
+     * Hex SHA-256 of the content, computed when it was stored, or {@code null}
+     * if the repository does not keep one.
+     */
+    default String digest() {
+        return null;
+    }
+
+    /** Encoding the content is kept in, such as {@code deflate}, or {@code null} if it is kept as is. */
+    default String encoding() {
+        return null;
+    }
+
+    /**
+     * The content in its stored {@link #encoding()}, as a region of another
+     * stored object, or {@code null} if it is not encoded. Lets a client
+     * that accepts the encoding receive the stored bytes as they are.
+     */
+    default EncodedContent encoded() {
+        return null;
+    }
+
+    /**
+     * Opens the content for reading. File-backed content returns a
+     * {@link java.nio.channels.FileChannel}, which lets callers use
+     * {@code transferTo} or memory mapping.
+     */
+    ReadableByteChannel openChannel() throws IOException;
+
+    /**
+     * Opens the content for reading from {@code position}. Implementations
+     * that can seek override the default, which reads and drops the bytes
+     * before the position.
+     */
+    default ReadableByteChannel openChannel(long position) throws IOException {
+        ReadableByteChannel channel = openChannel();
+        ByteBuffer skipBuffer = ByteBuffer.allocate((int) Math.min(position, 8192));
+        long skipped = 0;
+        try {
+            while (skipped < position) {
+                skipBuffer.clear().limit((int) Math.min(skipBuffer.capacity(), position - skipped));
+                int read = channel.read(skipBuffer);
+                if (read == -1) {
+                    break;
+                }
+                skipped += read;
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    /** {@code length} bytes of {@code content} starting at {@code offset}. */
+    record EncodedContent(StoredContent content, long offset, long length) {
+    }
+}
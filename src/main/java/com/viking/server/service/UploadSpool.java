@@ -0,0 +1,256 @@
+package com.viking.server.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import com.viking.exception.ValidationException;
+import com.viking.exception.ValidationException.Reason;
+
+/**
+ * An upload being copied into a temp file in the store directory.
+ *
+ * <p>Quota is reserved chunk by chunk while the data streams in. The spool
+ * is either published over its target with an atomic rename, which commits
+ * the reservation, or closed unpublished, which deletes the file and
+ * releases the reservation. The SHA-256 of the content is computed on the
+ * way through. Writes to the file go through a {@link DiskIoExecutor}.
+ *
+ * <p>If compression is chosen, the file is written in the
+ * {@link ContentCompression} format. Chunks still reserve their uncompressed
+ * size while streaming, and once the file is complete the reservation is
+ * cut down to what it takes on disk.
+ *
+ * <p>A spool that defers its quota keeps streaming when the quota has no
+ * room left, for content that may turn out to be stored already. Whatever
+ * could not be reserved is then owed until {@link #reserveRemaining()},
+ * which fails with the quota error if there is still no room; a spool that
+ * is discarded as a duplicate never pays it.
+ */
+class UploadSpool implements Closeable {
+
+    static final String SUFFIX = ".part";
+    static final String PREFIX = "upload-";
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    // one copy buffer per worker thread, so heap use per upload does not depend on the file size limit
+    private static final ThreadLocal<byte[]> COPY_BUFFER = ThreadLocal.withInitial(() -> new byte[COPY_BUFFER_SIZE]);
+
+    private final Path file;
+    private final StorageQuota quota;
+    private final DiskIoExecutor diskIo;
+    private final MessageDigest sha256;
+    private String digest;
+    private long size;
+    private long diskSize;
+    private boolean compressed;
+    private final boolean deferQuota;
+    private long reserved;
+    // bytes written without a reservation; only ever non-zero when deferring
+    private long unreserved;
+    private boolean published;
+    // time spent sniffing and writing, reported as store phases
+    private long validationNanos;
+    private long writeNanos;
+
+    private UploadSpool(Path file, StorageQuota quota, DiskIoExecutor diskIo, boolean deferQuota) {
+        this.file = file;
+        this.quota = quota;
+        this.diskIo = diskIo;
+        this.deferQuota = deferQuota;
+        try {
+            this.sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    static UploadSpool create(Path storeDir, StorageQuota quota, DiskIoExecutor diskIo, boolean deferQuota)
+            throws IOException {
+        return new UploadSpool(Files.createTempFile(storeDir, PREFIX, SUFFIX), quota, diskIo, deferQuota);
+    }
+
+    Path file() {
+        return file;
+    }
+
+    long size() {
+        return size;
+    }
+
+    /** Bytes the spool file takes on disk, which is less than {@link #size()} if it was compressed. */
+    long diskSize() {
+        return diskSize;
+    }
+
+    boolean compressed() {
+        return compressed;
+    }
+
+    long validationNanos() {
+        return validationNanos;
+    }
+
+    long writeNanos() {
+        return writeNanos;
+    }
+
+    /** Hex SHA-256 of the content; only valid once {@link #write} has completed. */
+    String digest() {
+        return digest;
+    }
+
+    /**
+     * Copies {@code in} into the spool file. The JSON sniffer sees every chunk
+     * until it reaches a verdict, and the copy stops as soon as that verdict
+     * rejects the content.
+     */
+    void write(InputStream in, long maxSize, JsonSniffer sniffer, boolean compress)
+            throws IOException, ValidationException {
+        byte[] buffer = COPY_BUFFER.get();
+        // the first chunk is read in full, so the compression decision sees a whole sample
+        int read = in.readNBytes(buffer, 0, ContentCompression.SAMPLE_SIZE);
+        compressed = ContentCompression.startsWithMagic(buffer, read)
+                || compress && ContentCompression.shouldCompress(buffer, read);
+        try (OutputStream out = openOutput()) {
+            while (read > 0) {
+                size += read;
+                if (size > maxSize) {
+                    throw new ValidationException(Reason.FILE_SIZE,
+                            "File exceeded 3MB limit: " + size + " bytes");
+                }
+                if (!sniffer.isDecided()) {
+                    long started = System.nanoTime();
+                    sniffer.feed(buffer, 0, read);
+                    validationNanos += System.nanoTime() - started;
+                    sniffer.requireNotJson();
+                }
+                reserve(read);
+                sha256.update(buffer, 0, read);
+                long started = System.nanoTime();
+                int length = read;
+                diskIo.run(() -> out.write(buffer, 0, length));
+                writeNanos += System.nanoTime() - started;
+                read = in.read(buffer);
+            }
+        }
+        if (compressed) {
+            ContentCompression.writeUncompressedSize(file, size);
+        }
+        reserveDiskSize();
+        long started = System.nanoTime();
+        sniffer.finish();
+        validationNanos += System.nanoTime() - started;
+        sniffer.requireNotJson();
+        digest = HexFormat.of().formatHex(sha256.digest());
+    }
+
+    private OutputStream openOutput() throws IOException {
+        OutputStream out = Files.newOutputStream(file);
+        if (!compressed) {
+            return out;
+        }
+        out.write(ContentCompression.header(0));
+        return new DeflaterOutputStream(out, new Deflater(Deflater.BEST_SPEED), COPY_BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    def.end();
+                }
+            }
+        };
+    }
+
+    private void reserve(long bytes) throws ValidationException {
+        if (unreserved == 0) {
+            try {
+                quota.reserve(bytes);
+                reserved += bytes;
+                return;
+            } catch (ValidationException e) {
+                if (!deferQuota) {
+                    throw e;
+                }
+            }
+        }
+        unreserved += bytes;
+    }
+
+    /**
+     * Trades the per-chunk reservation of uncompressed bytes for the size the
+     * file actually takes on disk.
+     */
+    private void reserveDiskSize() throws IOException, ValidationException {
+        diskSize = Files.size(file);
+        if (diskSize <= reserved) {
+            quota.release(reserved - diskSize);
+            reserved = diskSize;
+            unreserved = 0;
+            return;
+        }
+        unreserved = diskSize - reserved;
+        if (!deferQuota) {
+            reserveRemaining();
+        }
+    }
+
+    /** Reserves the bytes a deferring spool wrote without room in the quota. */
+    void reserveRemaining() throws ValidationException {
+        if (unreserved > 0) {
+            quota.reserve(unreserved);
+            reserved += unreserved;
+            unreserved = 0;
+        }
+    }
+
+    /**
+     * Moves the spool file over {@code target}, so readers only ever see the
+     * previous or the new content. A file already there is a retired one,
+     * whose bytes the repository credits once it is due for deletion.
+     */
+    void publish(Path target) throws IOException {
+        if (unreserved > 0) {
+            throw new IllegalStateException(unreserved + " bytes of " + file + " have no quota reserved");
+        }
+        long started = System.nanoTime();
+        try {
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        writeNanos += System.nanoTime() - started;
+        // the reservation stays charged, now for stored content
+        published = true;
+    }
+
+    /**
+     * Drops the spool because identical content is already stored. Its
+     * reservation is released, so the duplicate costs no quota.
+     */
+    void discard() throws IOException {
+        close();
+        published = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!published) {
+            quota.release(reserved);
+            reserved = 0;
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.viking.server.ws;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+import org.springframework.ws.samples.mtom.schema.BeginUploadRequest;
+import org.springframework.ws.samples.mtom.schema.BeginUploadResponse;
+import org.springframework.ws.samples.mtom.schema.ChunkInfo;
+import org.springframework.ws.samples.mtom.schema.CommitUploadRequest;
+import org.springframework.ws.samples.mtom.schema.CommitUploadResponse;
+import org.springframework.ws.samples.mtom.schema.ObjectFactory;
+import org.springframework.ws.samples.mtom.schema.StoreChunkRequest;
+import org.springframework.ws.samples.mtom.schema.StoreChunkResponse;
+import org.springframework.ws.samples.mtom.schema.UploadStatusRequest;
+import org.springframework.ws.samples.mtom.schema.UploadStatusResponse;
+import org.springframework.ws.server.endpoint.annotation.Endpoint;
+import org.springframework.ws.server.endpoint.annotation.PayloadRoot;
+import org.springframework.ws.server.endpoint.annotation.RequestPayload;
+import org.springframework.ws.server.endpoint.annotation.ResponsePayload;
+
+import com.viking.exception.ValidationException;
+import com.viking.exception.ValidationSoapException;
+import com.viking.server.service.ChunkedUploadService;
+import com.viking.server.service.ChunkedUploadService.UploadSession;
+
+@Endpoint
+public class ChunkedUploadEndpoint {
+
+    private static final String NAMESPACE = "http://viking/soap/mtom/lab2025";
+
+    private ChunkedUploadService uploadService;
+    private ObjectFactory objectFactory;
+
+    public ChunkedUploadEndpoint(ChunkedUploadService uploadService) {
+        Assert.notNull(uploadService, "'uploadService' must not be null");
+        this.uploadService = uploadService;
+        this.objectFactory = new ObjectFactory();
+    }
+
+    @PayloadRoot(localPart = "BeginUploadRequest", namespace = NAMESPACE)
+    @ResponsePayload
+    public BeginUploadResponse beginUpload(@RequestPayload BeginUploadRequest request) throws IOException {
+        UploadSession session;
+        try {
+            session = this.uploadService.beginUpload(request.getName(), request.getTotalSize(), request.getChunkSize());
+        } catch (ValidationException e) {
+            throw new ValidationSoapException(e.getMessage());
+        }
+        BeginUploadResponse response = this.objectFactory.createBeginUploadResponse();
+        response.setUploadId(session.id());
+        response.setChunkCount(session.chunkCount());
+        return response;
+    }
+
+    @PayloadRoot(localPart = "StoreChunkRequest", namespace = NAMESPACE)
+    @ResponsePayload
+    public StoreChunkResponse storeChunk(@RequestPayload StoreChunkRequest request) throws IOException {
+        String checksum;
+        try {
+            checksum = this.uploadService.storeChunk(request.getUploadId(), request.getIndex(), request.getContent());
+        } catch (ValidationException e) {
+            throw new ValidationSoapException(e.getMessage());
+        }
+        StoreChunkResponse response = this.objectFactory.createStoreChunkResponse();
+        response.setUploadId(request.getUploadId());
+        response.setChunk(chunkInfo(request.getIndex(), checksum));
+        return response;
+    }
+
+    @PayloadRoot(localPart = "UploadStatusRequest", namespace = NAMESPACE)
+    @ResponsePayload
+    public UploadStatusResponse uploadStatus(@RequestPayload UploadStatusRequest request) {
+        UploadSession session;
+        try {
+            session = this.uploadService.status(request.getUploadId());
+        } catch (ValidationException e) {
+            throw new ValidationSoapException(e.getMessage());
+        }
+        UploadStatusResponse response = this.objectFactory.createUploadStatusResponse();
+        response.setUploadId(session.id());
+        response.setName(session.name());
+        response.setChunkCount(session.chunkCount());
+        session.receivedChunks().forEach((index, checksum) -> response.getReceivedChunk().add(chunkInfo(index, checksum)));
+        return response;
+    }
+
+    @PayloadRoot(localPart = "CommitUploadRequest", namespace = NAMESPACE)
+    @ResponsePayload
+    public CommitUploadResponse commitUpload(@RequestPayload CommitUploadRequest request) throws IOException {
+        Map<Integer, String> checksums = new HashMap<>();
+        for (ChunkInfo chunk : request.getChunk()) {
+            checksums.put(chunk.getIndex(), chunk.getChecksum());
+        }
+        long size;
+        try {
+            size = this.uploadService.commit(request.getUploadId(), checksums);
+        } catch (ValidationException e) {
+            throw new ValidationSoapException(e.getMessage());
+        }
+        CommitUploadResponse response = this.objectFactory.createCommitUploadResponse();
+        response.setMessage("Success");
+        response.setSize(size);
+        return response;
+    }
+
+    private ChunkInfo chunkInfo(int index, String checksum) {
+        ChunkInfo chunk = this.objectFactory.createChunkInfo();
+        chunk.setIndex(index);
+        chunk.setChecksum(checksum);
+        return chunk;
+    }
+}
@@ -0,0 +1,106 @@
+package com.viking.server.ws;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import org.springframework.ws.samples.mtom.schema.ContentItem;
+import org.springframework.ws.samples.mtom.schema.ItemResult;
+import org.springframework.ws.samples.mtom.schema.LoadContentBatchRequest;
+import org.springframework.ws.samples.mtom.schema.LoadContentBatchResponse;
+import org.springframework.ws.samples.mtom.schema.LoadedItem;
+import org.springframework.ws.samples.mtom.schema.ObjectFactory;
+import org.springframework.ws.samples.mtom.schema.StoreContentBatchRequest;
+import org.springframework.ws.samples.mtom.schema.StoreContentBatchResponse;
+import org.springframework.ws.server.endpoint.annotation.Endpoint;
+import org.springframework.ws.server.endpoint.annotation.PayloadRoot;
+import org.springframework.ws.server.endpoint.annotation.RequestPayload;
+import org.springframework.ws.server.endpoint.annotation.ResponsePayload;
+
+import com.viking.exception.ContentNotFoundException;
+import com.viking.exception.ValidationException;
+import com.viking.server.service.ContentRepository;
+import com.viking.server.service.StoredContent;
+
+/**
+ * Stores and loads many small objects per envelope. Every item gets its
+ * own result, so a bad item does not fail the batch, and store work runs
+ * in parallel on the bounded {@link ContentBatchExecutor}.
+ */
+@Endpoint
+public class ContentBatchEndpoint {
+
+    private static final Logger log = LoggerFactory.getLogger(ContentBatchEndpoint.class);
+
+    private ContentRepository contentRepository;
+    private ContentBatchExecutor batchExecutor;
+    private ObjectFactory objectFactory;
+
+    public ContentBatchEndpoint(ContentRepository contentRepository, ContentBatchExecutor batchExecutor) {
+        Assert.notNull(contentRepository, "'contentRepository' must not be null");
+        Assert.notNull(batchExecutor, "'batchExecutor' must not be null");
+        this.contentRepository = contentRepository;
+        this.batchExecutor = batchExecutor;
+        this.objectFactory = new ObjectFactory();
+    }
+
+    @PayloadRoot(localPart = "StoreContentBatchRequest", namespace = "http://viking/soap/mtom/lab2025")
+    @ResponsePayload
+    public StoreContentBatchResponse storeBatch(@RequestPayload StoreContentBatchRequest request) {
+        List<CompletableFuture<ItemResult>> pending = new ArrayList<>(request.getItem().size());
+        for (ContentItem item : request.getItem()) {
+            pending.add(this.batchExecutor.supplyAsync(() -> store(item)));
+        }
+
+        StoreContentBatchResponse response = this.objectFactory.createStoreContentBatchResponse();
+        for (CompletableFuture<ItemResult> result : pending) {
+            response.getResult().add(result.join());
+        }
+        return response;
+    }
+
+    @PayloadRoot(localPart = "LoadContentBatchRequest", namespace = "http://viking/soap/mtom/lab2025")
+    @ResponsePayload
+    public LoadContentBatchResponse loadBatch(@RequestPayload LoadContentBatchRequest request) {
+        LoadContentBatchResponse response = this.objectFactory.createLoadContentBatchResponse();
+        for (String name : request.getName()) {
+            LoadedItem item = this.objectFactory.createLoadedItem();
+            item.setName(name);
+            try {
+                StoredContent content = this.contentRepository.openContent(name);
+                item.setContent(new StoredContentDataSource(content).toDataHandler());
+                item.setSuccess(true);
+            } catch (ContentNotFoundException e) {
+                item.setSuccess(false);
+                item.setMessage(e.getMessage());
+            } catch (Exception e) {
+                log.warn("Failed to load batch item {}", name, e);
+                item.setSuccess(false);
+                item.setMessage("Failed to load content: " + e.getMessage());
+            }
+            response.getItem().add(item);
+        }
+        return response;
+    }
+
+    private ItemResult store(ContentItem item) {
+        ItemResult result = this.objectFactory.createItemResult();
+        result.setName(item.getName());
+        try {
+            this.contentRepository.storeContent(item.getName(), item.getContent());
+            result.setSuccess(true);
+            result.setMessage("Success");
+        } catch (ValidationException e) {
+            result.setSuccess(false);
+            result.setMessage(e.getMessage());
+        } catch (Exception e) {
+            log.warn("Failed to store batch item {}", item.getName(), e);
+            result.setSuccess(false);
+            result.setMessage("Failed to store content: " + e.getMessage());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,34 @@
+package com.viking.server.ws;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * The bounded pool that runs the items of store batches.
+ *
+ * <p>It wraps its pool instead of being an {@link java.util.concurrent.Executor}
+ * itself: Spring Boot backs off from its {@code applicationTaskExecutor}
+ * when the context holds any bean of that type.
+ */
+public final class ContentBatchExecutor implements AutoCloseable {
+
+    private final ExecutorService executor;
+
+    public ContentBatchExecutor(int parallelism) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism,
+                runnable -> new Thread(runnable, "content-batch-" + threadCount.incrementAndGet()));
+    }
+
+    <T> CompletableFuture<T> supplyAsync(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, executor);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
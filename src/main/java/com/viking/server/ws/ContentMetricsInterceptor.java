@@ -0,0 +1,70 @@
+package com.viking.server.ws;
+
+import java.lang.reflect.Method;
+
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.server.SmartEndpointInterceptor;
+import org.springframework.ws.server.endpoint.MethodEndpoint;
+import org.springframework.ws.soap.SoapMessage;
+
+import com.viking.server.metrics.ContentMetrics;
+import com.viking.server.metrics.ContentMetrics.Phase;
+
+/**
+ * Times each endpoint invocation from dispatch to completion and counts the
+ * ones that end in a fault. Applies to every {@link MethodEndpoint}; being a
+ * {@link SmartEndpointInterceptor} bean is enough for the endpoint mappings
+ * to pick it up.
+ */
+public class ContentMetricsInterceptor implements SmartEndpointInterceptor {
+
+    private static final String START_PROPERTY = ContentMetricsInterceptor.class.getName() + ".start";
+
+    private final ContentMetrics metrics;
+
+    public ContentMetricsInterceptor(ContentMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean shouldIntercept(MessageContext messageContext, Object endpoint) {
+        return endpoint instanceof MethodEndpoint;
+    }
+
+    @Override
+    public boolean handleRequest(MessageContext messageContext, Object endpoint) {
+        messageContext.setProperty(START_PROPERTY, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public boolean handleResponse(MessageContext messageContext, Object endpoint) {
+        return true;
+    }
+
+    @Override
+    public boolean handleFault(MessageContext messageContext, Object endpoint) {
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(MessageContext messageContext, Object endpoint, Exception ex) {
+        if (!(messageContext.getProperty(START_PROPERTY) instanceof Long started)) {
+            return;
+        }
+        Method method = ((MethodEndpoint) endpoint).getMethod();
+        metrics.recordEndpointPhase(method, Phase.ENDPOINT, System.nanoTime() - started);
+        if (ex != null || hasFault(messageContext)) {
+            metrics.recordFault(method);
+        }
+    }
+
+    private static boolean hasFault(MessageContext messageContext) {
+        if (!messageContext.hasResponse()) {
+            return false;
+        }
+        WebServiceMessage response = messageContext.getResponse();
+        return response instanceof SoapMessage soapMessage && soapMessage.hasFault();
+    }
+}
@@ -1,11 +1,15 @@
 package com.viking.server.ws;
 
 
-import java.io.File;
 import java.io.IOException;
 
 
 import org.springframework.util.Assert;
+import org.springframework.ws.samples.mtom.schema.ContentEntry;
+import org.springframework.ws.samples.mtom.schema.ListContentRequest;
+import org.springframework.ws.samples.mtom.schema.ListContentResponse;
+import org.springframework.ws.samples.mtom.schema.LoadContentRangeRequest;
+import org.springframework.ws.samples.mtom.schema.LoadContentRangeResponse;
 import org.springframework.ws.samples.mtom.schema.LoadContentRequest;
 import org.springframework.ws.samples.mtom.schema.LoadContentResponse;
 import org.springframework.ws.samples.mtom.schema.ObjectFactory;
@@ -16,36 +20,49 @@ import org.springframework.ws.server.endpoint.annotation.PayloadRoot;
 import org.springframework.ws.server.endpoint.annotation.RequestPayload;
 import org.springframework.ws.server.endpoint.annotation.ResponsePayload;
 
+import com.viking.exception.ContentNotFoundException;
+import com.viking.exception.ContentNotFoundSoapException;
 import com.viking.exception.ValidationException;
 import com.viking.exception.ValidationSoapException;
+import com.viking.exception.VersionConflictException;
+import com.viking.exception.VersionConflictSoapException;
+import com.viking.server.metrics.ContentMetrics;
+import com.viking.server.service.ContentInfo;
 import com.viking.server.service.ContentRepository;
-
-import jakarta.activation.DataHandler;
-import jakarta.activation.FileDataSource;
+import com.viking.server.service.StoredContent;
+import com.viking.server.service.StoredContent.EncodedContent;
 
 
 @Endpoint
 public class ContentRepositoryEndpoint {
 
     private ContentRepository contentRepository;
+    private ContentMetrics metrics;
     private ObjectFactory objectFactory;
 
-    public ContentRepositoryEndpoint(ContentRepository contentRepository) {
+    public ContentRepositoryEndpoint(ContentRepository contentRepository, ContentMetrics metrics) {
         Assert.notNull(contentRepository, "'imageRepository' must not be null");
         this.contentRepository = contentRepository;
+        this.metrics = metrics;
         this.objectFactory = new ObjectFactory();
     }
 
     @PayloadRoot(localPart = "StoreContentRequest", namespace = "http://viking/soap/mtom/lab2025")
     @ResponsePayload
     public StoreContentResponse storeContent(@RequestPayload StoreContentRequest request) throws IOException {
+        Long ifMatchVersion = request.getIfMatchVersion();
+        long version;
         try {
-            this.contentRepository.storeContent(request.getName(), request.getContent());
+            version = this.contentRepository.storeContent(request.getName(), request.getContent(),
+                    ifMatchVersion != null ? ifMatchVersion : ContentRepository.ANY_VERSION);
+        } catch (VersionConflictException e) {
+            throw new VersionConflictSoapException(e.getMessage());
         } catch (ValidationException e) {
             throw new ValidationSoapException(e.getMessage());
         }
         StoreContentResponse response = this.objectFactory.createStoreContentResponse();
         response.setMessage("Success");
+        response.setVersion(version);
         return response;
     }
 
@@ -53,10 +70,102 @@ public class ContentRepositoryEndpoint {
     @ResponsePayload
     public LoadContentResponse load(@RequestPayload LoadContentRequest request) throws IOException {
         LoadContentResponse response = this.objectFactory.createLoadContentResponse();
-        File contentFile = this.contentRepository.loadContent(request.getName());
-        DataHandler dataHandler = new DataHandler(new FileDataSource(contentFile));
         response.setName(request.getName());
-        response.setContent(dataHandler);
+        StoredContent content;
+        try {
+            if (request.getIfNoneMatch() != null || request.getIfNoneMatchVersion() != null) {
+                // answered from the index, without opening the content
+                ContentInfo info = this.contentRepository.contentInfo(request.getName());
+                if (matches(request, info)) {
+                    response.setVersion(info.version());
+                    response.setDigest(info.digest());
+                    response.setNotModified(true);
+                    return response;
+                }
+            }
+            content = this.contentRepository.openContent(request.getName());
+        } catch (ContentNotFoundException e) {
+            throw new ContentNotFoundSoapException(e.getMessage());
+        }
+        if (content.version() > 0) {
+            response.setVersion(content.version());
+        }
+        response.setDigest(content.digest());
+        EncodedContent encoded = accepts(request.getAcceptEncoding(), content.encoding()) ? content.encoded() : null;
+        if (encoded != null) {
+            response.setContentEncoding(content.encoding());
+            response.setContent(new StoredContentDataSource(encoded.content(), encoded.offset(), encoded.length())
+                    .toDataHandler());
+            this.metrics.recordBytesOut(encoded.length());
+        } else {
+            response.setContent(new StoredContentDataSource(content).toDataHandler());
+            this.metrics.recordBytesOut(content.size());
+        }
+        return response;
+    }
+
+    private static boolean matches(LoadContentRequest request, ContentInfo info) {
+        String digest = request.getIfNoneMatch();
+        if (digest != null && info.digest() != null && digest.trim().equalsIgnoreCase(info.digest())) {
+            return true;
+        }
+        Long version = request.getIfNoneMatchVersion();
+        return version != null && info.version() > 0 && version == info.version();
+    }
+
+    private static boolean accepts(String acceptEncoding, String encoding) {
+        if (acceptEncoding == null || encoding == null) {
+            return false;
+        }
+        for (String accepted : acceptEncoding.split(",")) {
+            if (accepted.trim().equalsIgnoreCase(encoding)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @PayloadRoot(localPart = "ListContentRequest", namespace = "http://viking/soap/mtom/lab2025")
+    @ResponsePayload
+    public ListContentResponse list(@RequestPayload ListContentRequest request) throws IOException {
+        ListContentResponse response = this.objectFactory.createListContentResponse();
+        String prefix = request.getPrefix() != null ? request.getPrefix() : "";
+        for (ContentInfo info : this.contentRepository.listContent(prefix)) {
+            ContentEntry entry = this.objectFactory.createContentEntry();
+            entry.setName(info.name());
+            entry.setVersion(info.version());
+            entry.setSize(info.size());
+            entry.setDigest(info.digest());
+            response.getEntry().add(entry);
+        }
+        return response;
+    }
+
+    @PayloadRoot(localPart = "LoadContentRangeRequest", namespace = "http://viking/soap/mtom/lab2025")
+    @ResponsePayload
+    public LoadContentRangeResponse loadRange(@RequestPayload LoadContentRangeRequest request) throws IOException {
+        StoredContent content;
+        try {
+            content = this.contentRepository.openContent(request.getName());
+        } catch (ContentNotFoundException e) {
+            throw new ContentNotFoundSoapException(e.getMessage());
+        }
+        long offset = request.getOffset();
+        Long requestedLength = request.getLength();
+        if (offset < 0 || offset > content.size() || (requestedLength != null && requestedLength < 0)) {
+            throw new ValidationSoapException(String.format("Range not satisfiable: offset=%d, length=%s, size=%d",
+                    offset, requestedLength, content.size()));
+        }
+        long available = content.size() - offset;
+        long length = requestedLength == null ? available : Math.min(requestedLength, available);
+
+        LoadContentRangeResponse response = this.objectFactory.createLoadContentRangeResponse();
+        response.setName(request.getName());
+        response.setOffset(offset);
+        response.setLength(length);
+        response.setTotalSize(content.size());
+        response.setContent(new StoredContentDataSource(content, offset, length).toDataHandler());
+        this.metrics.recordBytesOut(length);
         return response;
     }
     
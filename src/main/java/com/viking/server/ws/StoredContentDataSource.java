@@ -0,0 +1,147 @@
+package com.viking.server.ws;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+import com.viking.server.io.ByteBufferChannel;
+import com.viking.server.io.ByteBufferInputStream;
+import com.viking.server.io.LimitedInputStream;
+import com.viking.server.service.StoredContent;
+
+import jakarta.activation.DataHandler;
+import jakarta.activation.DataSource;
+
+/**
+ * Serves stored content, or a byte range of it, as an MTOM attachment
+ * through NIO channels.
+ *
+ * <p>Larger file regions are memory-mapped and written from the mapping,
+ * which avoids the read copy a {@code FileInputStream} would make. All
+ * file reads are positioned, so ranges cost no more than the bytes they
+ * cover. Content cached in memory is written straight from its buffer.
+ */
+public class StoredContentDataSource implements DataSource {
+
+    private static final String CONTENT_TYPE = "application/octet-stream";
+
+    // below this size a plain read is cheaper than setting up a mapping
+    private static final long MAP_THRESHOLD = 64 * 1024;
+    private static final int WRITE_CHUNK_SIZE = 64 * 1024;
+
+    private final StoredContent content;
+    private final long offset;
+    private final long length;
+
+    public StoredContentDataSource(StoredContent content) {
+        this(content, 0, content.size());
+    }
+
+    public StoredContentDataSource(StoredContent content, long offset, long length) {
+        this.content = content;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /** Wraps this data source in a handler that streams through {@link #writeTo(OutputStream)}. */
+    public DataHandler toDataHandler() {
+        return new DataHandler(this) {
+            @Override
+            public void writeTo(OutputStream os) throws IOException {
+                StoredContentDataSource.this.writeTo(os);
+            }
+        };
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        ReadableByteChannel channel = content.openChannel(offset);
+        if (channel instanceof ByteBufferChannel memory) {
+            return new ByteBufferInputStream(range(memory));
+        }
+        if (channel instanceof FileChannel file) {
+            long available = available(file);
+            if (isMappable(available)) {
+                try (file) {
+                    return new ByteBufferInputStream(file.map(FileChannel.MapMode.READ_ONLY, offset, available));
+                }
+            }
+        }
+        return new LimitedInputStream(Channels.newInputStream(channel), length);
+    }
+
+    public void writeTo(OutputStream os) throws IOException {
+        try (ReadableByteChannel channel = content.openChannel(offset)) {
+            if (channel instanceof ByteBufferChannel memory) {
+                writeBuffer(range(memory), os);
+            } else if (channel instanceof FileChannel file) {
+                writeMapped(file, os);
+            } else {
+                copy(channel, os, length);
+            }
+        }
+    }
+
+    private void writeMapped(FileChannel file, OutputStream os) throws IOException {
+        long available = available(file);
+        if (!isMappable(available)) {
+            copy(file, os, available);
+            return;
+        }
+        MappedByteBuffer mapped = file.map(FileChannel.MapMode.READ_ONLY, offset, available);
+        new ByteBufferInputStream(mapped).transferTo(os);
+    }
+
+    /** Content held in memory goes out without any read at all. */
+    private static void writeBuffer(ByteBuffer data, OutputStream os) throws IOException {
+        new ByteBufferInputStream(data).transferTo(os);
+    }
+
+    private ByteBuffer range(ByteBufferChannel memory) {
+        ByteBuffer data = memory.remaining();
+        return data.limit((int) Math.min(length, data.remaining()));
+    }
+
+    /** Bytes of the range that the file actually holds. */
+    private long available(FileChannel file) throws IOException {
+        return Math.max(0, Math.min(length, file.size() - offset));
+    }
+
+    private static boolean isMappable(long size) {
+        return size >= MAP_THRESHOLD && size <= Integer.MAX_VALUE;
+    }
+
+    private static void copy(ReadableByteChannel channel, OutputStream os, long limit) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(WRITE_CHUNK_SIZE, Math.max(limit, 1)));
+        long remaining = limit;
+        while (remaining > 0) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+            int read = channel.read(buffer);
+            if (read == -1) {
+                break;
+            }
+            os.write(buffer.array(), 0, read);
+            remaining -= read;
+        }
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        throw new UnsupportedOperationException("Stored content is read-only");
+    }
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public String getName() {
+        return content.name();
+    }
+}
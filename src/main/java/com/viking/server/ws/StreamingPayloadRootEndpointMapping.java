@@ -0,0 +1,45 @@
+package com.viking.server.ws;
+
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import org.apache.axiom.om.OMNamespace;
+import org.apache.axiom.soap.SOAPBody;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.server.endpoint.mapping.AbstractEndpointMapping;
+import org.springframework.ws.soap.axiom.AxiomSoapMessage;
+
+/**
+ * Maps payload root elements to endpoints without reading the payload.
+ *
+ * <p>The usual payload root mapping reads the payload to find the element
+ * name, which makes Axiom build that part of the tree. Axiom's body can
+ * report the name of its first element without building it, so the
+ * endpoint still gets an unread payload and builds only what it needs.
+ * Messages of any other kind are left to the other mappings.
+ */
+public class StreamingPayloadRootEndpointMapping extends AbstractEndpointMapping {
+
+    private final Map<QName, Object> endpoints;
+
+    public StreamingPayloadRootEndpointMapping(Map<QName, Object> endpoints) {
+        this.endpoints = Map.copyOf(endpoints);
+    }
+
+    @Override
+    protected Object getEndpointInternal(MessageContext messageContext) {
+        WebServiceMessage request = messageContext.getRequest();
+        if (!(request instanceof AxiomSoapMessage axiomMessage)) {
+            return null;
+        }
+        SOAPBody body = axiomMessage.getAxiomMessage().getSOAPEnvelope().getBody();
+        String localName = body.getFirstElementLocalName();
+        if (localName == null) {
+            return null;
+        }
+        OMNamespace namespace = body.getFirstElementNS();
+        return endpoints.get(new QName(namespace != null ? namespace.getNamespaceURI() : "", localName));
+    }
+}
@@ -0,0 +1,136 @@
+package com.viking.server.ws;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Iterator;
+
+import javax.xml.namespace.QName;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMNode;
+import org.apache.axiom.om.OMText;
+import org.springframework.util.Assert;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.mime.Attachment;
+import org.springframework.ws.server.endpoint.MessageEndpoint;
+import org.springframework.ws.soap.axiom.AxiomSoapMessage;
+import org.springframework.xml.transform.StringSource;
+import org.springframework.xml.transform.TransformerHelper;
+
+import com.viking.exception.ValidationException;
+import com.viking.exception.ValidationSoapException;
+import com.viking.exception.VersionConflictException;
+import com.viking.exception.VersionConflictSoapException;
+import com.viking.io.BytesDataSource;
+import com.viking.server.metrics.ContentMetrics;
+import com.viking.server.metrics.ContentMetrics.Phase;
+import com.viking.server.service.ContentRepository;
+
+import jakarta.activation.DataHandler;
+
+/**
+ * {@code StoreContentRequest} without DOM or JAXB.
+ *
+ * <p>Runs behind an {@code AxiomSoapMessageFactory}: only the elements of the
+ * payload that are needed are read from Axiom's deferred tree, and the MTOM
+ * attachment is handed to the repository as a stream instead of being bound
+ * to a request object first. The attachment is the one the
+ * {@code xop:Include} of the {@code Content} element refers to by its
+ * Content-ID, whatever other parts the message carries. Requests that
+ * inline the content as base64 instead of attaching it still work, at the
+ * cost of decoding it in memory.
+ *
+ * <p>This is not a method endpoint, so the metrics interceptor does not see
+ * it; it records the same store phases and faults itself.
+ */
+public class StreamingStoreContentEndpoint implements MessageEndpoint {
+
+    private static final String NAMESPACE = "http://viking/soap/mtom/lab2025";
+    public static final QName REQUEST_NAME = new QName(NAMESPACE, "StoreContentRequest");
+
+    private static final QName NAME = new QName(NAMESPACE, "Name");
+    private static final QName CONTENT = new QName(NAMESPACE, "Content");
+    private static final QName IF_MATCH_VERSION = new QName(NAMESPACE, "IfMatchVersion");
+
+    private static final String RESPONSE = "<tns:StoreContentResponse xmlns:tns=\"" + NAMESPACE + "\">"
+            + "<tns:Message>Success</tns:Message><tns:Version>%d</tns:Version></tns:StoreContentResponse>";
+
+    private final ContentRepository contentRepository;
+    private final ContentMetrics metrics;
+    private final TransformerHelper transformerHelper = new TransformerHelper();
+
+    public StreamingStoreContentEndpoint(ContentRepository contentRepository, ContentMetrics metrics) {
+        Assert.notNull(contentRepository, "'contentRepository' must not be null");
+        this.contentRepository = contentRepository;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void invoke(MessageContext messageContext) throws Exception {
+        long started = System.nanoTime();
+        boolean stored = false;
+        try {
+            long version = store(messageContext.getRequest());
+            transformerHelper.transform(new StringSource(String.format(RESPONSE, version)),
+                    messageContext.getResponse().getPayloadResult());
+            stored = true;
+        } finally {
+            metrics.recordStorePhase(Phase.ENDPOINT, System.nanoTime() - started);
+            if (!stored) {
+                metrics.recordStoreFault();
+            }
+        }
+    }
+
+    /** Stores the content of a {@code StoreContentRequest} and returns its new version. */
+    long store(WebServiceMessage request) throws IOException {
+        Assert.isInstanceOf(AxiomSoapMessage.class, request, "Streaming endpoint needs an Axiom message");
+        AxiomSoapMessage message = (AxiomSoapMessage) request;
+        long started = System.nanoTime();
+        OMElement payload = message.getAxiomMessage().getSOAPEnvelope().getBody().getFirstElement();
+        String name = requiredChild(payload, NAME).getText();
+        DataHandler content = content(message, requiredChild(payload, CONTENT));
+        OMElement ifMatchVersion = payload.getFirstChildWithName(IF_MATCH_VERSION);
+        metrics.recordStorePhase(Phase.UNMARSHAL, System.nanoTime() - started);
+        try {
+            return contentRepository.storeContent(name, content, ifMatchVersion != null
+                    ? Long.parseLong(ifMatchVersion.getText().trim()) : ContentRepository.ANY_VERSION);
+        } catch (VersionConflictException e) {
+            throw new VersionConflictSoapException(e.getMessage());
+        } catch (ValidationException e) {
+            throw new ValidationSoapException(e.getMessage());
+        }
+    }
+
+    /**
+     * The attachment the {@code xop:Include} in {@code element} refers to,
+     * which Axiom has turned into an optimized text node carrying its
+     * Content-ID, or else the element's base64 text.
+     */
+    private static DataHandler content(AxiomSoapMessage message, OMElement element) {
+        for (Iterator<OMNode> children = element.getChildren(); children.hasNext(); ) {
+            if (children.next() instanceof OMText text && text.isOptimized()) {
+                return attachment(message, text.getContentID());
+            }
+        }
+        byte[] inline = Base64.getMimeDecoder().decode(element.getText());
+        return new DataHandler(new BytesDataSource(inline));
+    }
+
+    private static DataHandler attachment(AxiomSoapMessage message, String contentId) {
+        Attachment attachment = contentId != null ? message.getAttachment(contentId) : null;
+        if (attachment == null) {
+            throw new ValidationSoapException("StoreContentRequest refers to a missing attachment: " + contentId);
+        }
+        return attachment.getDataHandler();
+    }
+
+    private static OMElement requiredChild(OMElement payload, QName name) {
+        OMElement child = payload.getFirstChildWithName(name);
+        if (child == null) {
+            throw new ValidationSoapException("StoreContentRequest has no " + name.getLocalPart() + " element");
+        }
+        return child;
+    }
+}
@@ -0,0 +1,46 @@
+package com.viking.server.ws;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.oxm.Marshaller;
+import org.springframework.oxm.Unmarshaller;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.server.endpoint.adapter.method.MarshallingPayloadMethodProcessor;
+
+import com.viking.server.metrics.ContentMetrics;
+import com.viking.server.metrics.ContentMetrics.Phase;
+
+/**
+ * {@link MarshallingPayloadMethodProcessor} that times unmarshalling of the
+ * request and marshalling of the response per endpoint method.
+ */
+public class TimedMarshallingPayloadMethodProcessor extends MarshallingPayloadMethodProcessor {
+
+    private final ContentMetrics metrics;
+
+    public TimedMarshallingPayloadMethodProcessor(Marshaller marshaller, Unmarshaller unmarshaller,
+            ContentMetrics metrics) {
+        super(marshaller, unmarshaller);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Object resolveArgument(MessageContext messageContext, MethodParameter parameter) throws Exception {
+        long started = System.nanoTime();
+        try {
+            return super.resolveArgument(messageContext, parameter);
+        } finally {
+            metrics.recordEndpointPhase(parameter.getMethod(), Phase.UNMARSHAL, System.nanoTime() - started);
+        }
+    }
+
+    @Override
+    public void handleReturnValue(MessageContext messageContext, MethodParameter returnType, Object returnValue)
+            throws Exception {
+        long started = System.nanoTime();
+        try {
+            super.handleReturnValue(messageContext, returnType, returnValue);
+        } finally {
+            metrics.recordEndpointPhase(returnType.getMethod(), Phase.MARSHAL, System.nanoTime() - started);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.viking.client;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ws.samples.mtom.schema.ContentEntry;
+import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
+
+import jakarta.activation.DataHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkTransferTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FakeClient client;
+    private BulkTransfer bulkTransfer;
+
+    @BeforeEach
+    void setUp() {
+        client = new FakeClient();
+        bulkTransfer = new BulkTransfer(client);
+        bulkTransfer.parallelism = 4;
+    }
+
+    @Test
+    void testRelativeNameUsesSlashes() {
+        Path dir = tempDir.resolve("upload");
+
+        assertEquals("a.txt", BulkTransfer.relativeName(dir, dir.resolve("a.txt")));
+        assertEquals("sub/deeper/b.txt", BulkTransfer.relativeName(dir, dir.resolve("sub").resolve("deeper")
+                .resolve("b.txt")));
+    }
+
+    @Test
+    void testUploadStoresRelativeNamesAfterPrefix() throws Exception {
+        Path dir = Files.createDirectories(tempDir.resolve("upload"));
+        Files.writeString(dir.resolve("a.txt"), "a");
+        Files.writeString(Files.createDirectories(dir.resolve("sub")).resolve("b.txt"), "bb");
+
+        BulkTransfer.Report report = bulkTransfer.upload(dir, "backup/");
+
+        assertEquals(0, report.failures());
+        assertEquals(3, report.bytes());
+        assertEquals(Map.of("backup/a.txt", "a", "backup/sub/b.txt", "bb"), client.stored);
+    }
+
+    @Test
+    void testUploadReportsEachFailure() throws Exception {
+        Path dir = Files.createDirectories(tempDir.resolve("upload"));
+        Files.writeString(dir.resolve("good.txt"), "good");
+        Files.writeString(dir.resolve("bad.txt"), "bad");
+        client.failing = "bad.txt";
+
+        BulkTransfer.Report report = bulkTransfer.upload(dir, "");
+
+        assertEquals(1, report.failures());
+        BulkTransfer.FileResult failed = report.files().stream().filter(result -> !result.succeeded())
+                .findFirst().orElseThrow();
+        assertEquals("bad.txt", failed.name());
+        assertTrue(failed.error().contains("refused bad.txt"));
+        assertEquals(Map.of("good.txt", "good"), client.stored);
+    }
+
+    @Test
+    void testDownloadRejectsNamesOutsideTarget() throws Exception {
+        Path target = tempDir.resolve("download");
+        client.entries = List.of(entry("p/ok.txt"), entry("p/../../escape.txt"), entry("p/"));
+
+        BulkTransfer.Report report = bulkTransfer.download("p/", target);
+
+        List<BulkTransfer.FileResult> results = report.files().stream()
+                .sorted(Comparator.comparing(BulkTransfer.FileResult::name)).toList();
+        assertEquals(List.of("p/", "p/../../escape.txt", "p/ok.txt"),
+                results.stream().map(BulkTransfer.FileResult::name).toList());
+        assertFalse(results.get(0).succeeded());
+        assertFalse(results.get(1).succeeded());
+        assertTrue(results.get(2).succeeded());
+        assertEquals("p/ok.txt", Files.readString(target.resolve("ok.txt")));
+        assertFalse(Files.exists(tempDir.getParent().resolve("escape.txt")));
+        assertEquals(List.of("p/ok.txt"), client.loaded);
+    }
+
+    private static ContentEntry entry(String name) {
+        ContentEntry entry = new ContentEntry();
+        entry.setName(name);
+        return entry;
+    }
+
+    /** Stands in for the server: keeps what is stored and serves each name as its own content. */
+    private static final class FakeClient extends SaajMtomClient {
+
+        final Map<String, String> stored = new ConcurrentHashMap<>();
+        final List<String> loaded = new CopyOnWriteArrayList<>();
+        List<ContentEntry> entries = List.of();
+        String failing;
+
+        FakeClient() {
+            super(new SaajSoapMessageFactory());
+        }
+
+        @Override
+        public void store(String name, DataHandler content) {
+            if (name.equals(failing)) {
+                throw new IllegalStateException("refused " + name);
+            }
+            try (InputStream in = content.getInputStream()) {
+                stored.put(name, new String(in.readAllBytes()));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public List<ContentEntry> list(String prefix) {
+            return entries;
+        }
+
+        @Override
+        public long loadTo(String name, Path file) throws IOException {
+            loaded.add(name);
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, name);
+            return name.length();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.viking.client;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PooledHttpConnectionTest {
+
+    private HttpClient httpClient;
+    private WebServiceMessage message;
+    private URI unreachable;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(2)).build();
+        SaajSoapMessageFactory messageFactory = new SaajSoapMessageFactory();
+        messageFactory.afterPropertiesSet();
+        message = messageFactory.createWebServiceMessage();
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        // nothing listens there any more, so connecting is refused
+        unreachable = URI.create("http://localhost:" + port + "/mtom-server/services");
+    }
+
+    @Test
+    void testRouteSlotReleasedWhenSendFails() throws Exception {
+        Semaphore route = new Semaphore(1);
+        PooledHttpConnection connection = connection(route, Duration.ofSeconds(5));
+
+        assertThrows(IOException.class, () -> connection.send(message));
+        assertEquals(1, route.availablePermits());
+
+        connection.close();
+        assertEquals(1, route.availablePermits());
+    }
+
+    @Test
+    void testSendGivesUpWhenNoSlotFrees() throws Exception {
+        Semaphore route = new Semaphore(0);
+        PooledHttpConnection connection = connection(route, Duration.ofMillis(50));
+
+        IOException e = assertThrows(IOException.class, () -> connection.send(message));
+        assertTrue(e.getMessage().startsWith("No free connection"));
+
+        connection.close();
+        assertEquals(0, route.availablePermits());
+    }
+
+    private PooledHttpConnection connection(Semaphore route, Duration requestTimeout) {
+        return new PooledHttpConnection(httpClient, unreachable, requestTimeout, false, route);
+    }
+}
@@ -0,0 +1,142 @@
+package com.viking.server;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.oxm.jaxb.Jaxb2Marshaller;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.ws.client.core.WebServiceTemplate;
+import org.springframework.ws.samples.mtom.schema.LoadContentRequest;
+import org.springframework.ws.samples.mtom.schema.LoadContentResponse;
+import org.springframework.ws.samples.mtom.schema.ObjectFactory;
+import org.springframework.ws.samples.mtom.schema.StoreContentRequest;
+import org.springframework.ws.samples.mtom.schema.StoreContentResponse;
+import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
+
+import com.viking.io.BytesDataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import jakarta.activation.DataHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * With streaming on, StoreContent goes through the streaming endpoint while
+ * the other operations still need a payload that JAXB can read.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = { "content.ws.streaming=true", "content.cache.enabled=false" })
+class StreamingModeTests {
+
+    @TempDir
+    static Path storeRoot;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ObjectFactory objectFactory = new ObjectFactory();
+    private WebServiceTemplate template;
+
+    @DynamicPropertySource
+    static void storeProperties(DynamicPropertyRegistry registry) {
+        registry.add("content.store.root", () -> storeRoot.toString());
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Jaxb2Marshaller marshaller = new Jaxb2Marshaller();
+        marshaller.setContextPath("org.springframework.ws.samples.mtom.schema");
+        marshaller.setMtomEnabled(true);
+        marshaller.afterPropertiesSet();
+        SaajSoapMessageFactory messageFactory = new SaajSoapMessageFactory();
+        messageFactory.afterPropertiesSet();
+        template = new WebServiceTemplate(marshaller);
+        template.setMessageFactory(messageFactory);
+        template.setDefaultUri("http://localhost:" + port + "/mtom-server/services");
+    }
+
+    @Test
+    void testStreamingStoreThenJaxbLoad() throws Exception {
+        byte[] data = new byte[200 * 1024]; // above the attachment cache threshold
+        Arrays.fill(data, (byte) 0xFF);
+
+        StoreContentRequest store = objectFactory.createStoreContentRequest();
+        store.setName("streamed.bin");
+        store.setContent(new DataHandler(new BytesDataSource(data)));
+        StoreContentResponse stored = (StoreContentResponse) template.marshalSendAndReceive(store);
+        assertEquals("Success", stored.getMessage());
+        assertNotNull(stored.getVersion());
+
+        LoadContentRequest load = objectFactory.createLoadContentRequest();
+        load.setName("streamed.bin");
+        LoadContentResponse loaded = (LoadContentResponse) template.marshalSendAndReceive(load);
+        assertEquals("streamed.bin", loaded.getName());
+        assertEquals(stored.getVersion(), loaded.getVersion());
+        try (InputStream in = loaded.getContent().getInputStream()) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void testAttachmentResolvedByContentId() throws Exception {
+        byte[] data = "the referenced part".getBytes(StandardCharsets.US_ASCII);
+        String envelope = "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+                + "<soapenv:Body><tns:StoreContentRequest xmlns:tns=\"http://viking/soap/mtom/lab2025\">"
+                + "<tns:Name>picked.bin</tns:Name><tns:Content>"
+                + "<xop:Include xmlns:xop=\"http://www.w3.org/2004/08/xop/include\" href=\"cid:content@viking\"/>"
+                + "</tns:Content></tns:StoreContentRequest></soapenv:Body></soapenv:Envelope>";
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        part(body, "application/xop+xml; charset=UTF-8; type=\"text/xml\"", "root@viking",
+                envelope.getBytes(StandardCharsets.UTF_8));
+        // a part the request does not refer to, placed before the one it does
+        part(body, "application/octet-stream", "decoy@viking", "not the content".getBytes(StandardCharsets.US_ASCII));
+        part(body, "application/octet-stream", "content@viking", data);
+        body.write("--MIMEBoundary--\r\n".getBytes(StandardCharsets.US_ASCII));
+        long storesBefore = meterRegistry.get("content.phase.duration")
+                .tags("operation", "StoreContent", "phase", "endpoint").timer().count();
+
+        HttpResponse<String> response = HttpClient.newHttpClient().send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + "/mtom-server/services"))
+                .header("Content-Type", "multipart/related; type=\"application/xop+xml\"; start=\"<root@viking>\"; "
+                        + "start-info=\"text/xml\"; boundary=MIMEBoundary")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode(), response.body());
+
+        LoadContentRequest load = objectFactory.createLoadContentRequest();
+        load.setName("picked.bin");
+        LoadContentResponse loaded = (LoadContentResponse) template.marshalSendAndReceive(load);
+        try (InputStream in = loaded.getContent().getInputStream()) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+        assertEquals(storesBefore + 1, meterRegistry.get("content.phase.duration")
+                .tags("operation", "StoreContent", "phase", "endpoint").timer().count());
+    }
+
+    private static void part(ByteArrayOutputStream body, String contentType, String contentId, byte[] content)
+            throws Exception {
+        String headers = "--MIMEBoundary\r\nContent-Type: " + contentType + "\r\n"
+                + "Content-Transfer-Encoding: binary\r\nContent-ID: <" + contentId + ">\r\n\r\n";
+        body.write(headers.getBytes(StandardCharsets.US_ASCII));
+        body.write(content);
+        body.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+    }
+}
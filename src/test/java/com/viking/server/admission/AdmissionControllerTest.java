@@ -0,0 +1,107 @@
+package com.viking.server.admission;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.viking.exception.ServerBusyException;
+import com.viking.server.metrics.ContentMetrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControllerTest {
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void testByteBudgetReleasedOnClose() throws Exception {
+        AdmissionController controller = controller(4, 1024 * 1024, 4, Duration.ofMillis(50));
+
+        AdmissionController.Admission first = controller.admit(768 * 1024);
+        assertEquals(768 * 1024, controller.inFlightBytes());
+        ServerBusyException e = assertThrows(ServerBusyException.class, () -> controller.admit(512 * 1024));
+        assertEquals(ServerBusyException.Reason.TIMEOUT, e.getReason());
+
+        first.close();
+        first.close();
+        assertEquals(0, controller.inFlightBytes());
+        try (AdmissionController.Admission second = controller.admit(512 * 1024)) {
+            assertEquals(1, controller.activeTransfers());
+        }
+        assertEquals(0, controller.activeTransfers());
+    }
+
+    @Test
+    void testOversizedTransferRunsAlone() throws Exception {
+        AdmissionController controller = controller(4, 1024 * 1024, 4, Duration.ofMillis(50));
+
+        try (AdmissionController.Admission large = controller.admit(10L * 1024 * 1024)) {
+            assertEquals(1024 * 1024, controller.inFlightBytes());
+            assertThrows(ServerBusyException.class, () -> controller.admit(1));
+        }
+    }
+
+    @Test
+    void testWaiterAdmittedWhenSlotFrees() throws Exception {
+        AdmissionController controller = controller(1, 1024 * 1024, 4, Duration.ofSeconds(10));
+        AdmissionController.Admission first = controller.admit(1024);
+
+        CompletableFuture<AdmissionController.Admission> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return controller.admit(1024);
+            } catch (ServerBusyException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (controller.queued() == 0) {
+            Thread.onSpinWait();
+        }
+        assertEquals(1.0, registry.get("content.admission.queued").gauge().value());
+
+        first.close();
+        waiter.get(5, TimeUnit.SECONDS).close();
+        assertEquals(0, controller.queued());
+    }
+
+    @Test
+    void testFullQueueRejectsImmediately() throws Exception {
+        AdmissionController controller = controller(1, 1024 * 1024, 1, Duration.ofSeconds(10));
+        AdmissionController.Admission first = controller.admit(1024);
+        CompletableFuture<Void> waiter = CompletableFuture.runAsync(() -> {
+            try {
+                controller.admit(1024).close();
+            } catch (ServerBusyException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (controller.queued() == 0) {
+            Thread.onSpinWait();
+        }
+
+        long started = System.nanoTime();
+        ServerBusyException e = assertThrows(ServerBusyException.class, () -> controller.admit(1024));
+
+        assertEquals(ServerBusyException.Reason.QUEUE_FULL, e.getReason());
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(1.0, registry.get("content.admission.rejections").tag("reason", "queue_full").counter().count());
+        assertEquals(0.0, registry.get("content.admission.rejections").tag("reason", "timeout").counter().count());
+        first.close();
+        waiter.get(5, TimeUnit.SECONDS);
+    }
+
+    private AdmissionController controller(int maxTransfers, long maxInFlightBytes, int maxQueued, Duration timeout) {
+        AdmissionController.Limits limits =
+                new AdmissionController.Limits(maxTransfers, maxInFlightBytes, maxQueued, timeout);
+        return new AdmissionController(limits, new ContentMetrics(registry));
+    }
+}
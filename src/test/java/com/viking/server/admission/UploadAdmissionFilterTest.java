@@ -0,0 +1,107 @@
+package com.viking.server.admission;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.oxm.jaxb.Jaxb2Marshaller;
+import org.springframework.ws.samples.mtom.schema.ServerBusy;
+import org.springframework.ws.soap.SoapFault;
+import org.springframework.ws.soap.SoapMessage;
+import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
+
+import com.viking.server.metrics.ContentMetrics;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadAdmissionFilterTest {
+
+    private static final long MIN_BYTES = 16 * 1024;
+
+    private Jaxb2Marshaller marshaller;
+    private AdmissionController controller;
+    private UploadAdmissionFilter filter;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        marshaller = new Jaxb2Marshaller();
+        marshaller.setContextPath("org.springframework.ws.samples.mtom.schema");
+        marshaller.afterPropertiesSet();
+        controller = new AdmissionController(
+                new AdmissionController.Limits(1, 64L * 1024 * 1024, 4, Duration.ofMillis(50)), ContentMetrics.noop());
+        filter = new UploadAdmissionFilter(controller, MIN_BYTES, marshaller);
+    }
+
+    @Test
+    void testSmallRequestBypassesAdmission() throws Exception {
+        try (AdmissionController.Admission busy = controller.admit(1024)) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            MockFilterChain chain = new MockFilterChain();
+
+            filter.doFilter(post(new byte[1024]), response, chain);
+
+            assertNotNull(chain.getRequest());
+            assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        }
+    }
+
+    @Test
+    void testUnknownLengthChargedAsFullUpload() throws Exception {
+        MockHttpServletRequest request = post(null);
+        AtomicLong charged = new AtomicLong();
+        MockFilterChain chain = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                charged.set(controller.inFlightBytes());
+            }
+        });
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertEquals(UploadAdmissionFilter.UNKNOWN_LENGTH_BYTES, charged.get());
+        assertEquals(0, controller.inFlightBytes());
+    }
+
+    @Test
+    void testRejectedUploadGetsBusyFault() throws Exception {
+        try (AdmissionController.Admission busy = controller.admit(1024)) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            MockFilterChain chain = new MockFilterChain();
+
+            filter.doFilter(post(new byte[(int) MIN_BYTES]), response, chain);
+
+            assertNull(chain.getRequest());
+            assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, response.getStatus());
+            assertEquals("1", response.getHeader("Retry-After"));
+            assertTrue(response.getContentType().startsWith("text/xml"));
+
+            SaajSoapMessageFactory messageFactory = new SaajSoapMessageFactory();
+            messageFactory.afterPropertiesSet();
+            SoapMessage fault = messageFactory.createWebServiceMessage(
+                    new ByteArrayInputStream(response.getContentAsByteArray()));
+            SoapFault soapFault = fault.getSoapBody().getFault();
+            assertTrue(soapFault.getFaultStringOrReason().startsWith("Server busy"));
+            ServerBusy detail = (ServerBusy) marshaller.unmarshal(
+                    soapFault.getFaultDetail().getDetailEntries().next().getSource());
+            assertEquals(1, detail.getRetryAfterSeconds());
+        }
+    }
+
+    private static MockHttpServletRequest post(byte[] body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/mtom-server/services");
+        request.setContentType("text/xml;charset=UTF-8");
+        if (body != null) {
+            request.setContent(body);
+        }
+        return request;
+    }
+}
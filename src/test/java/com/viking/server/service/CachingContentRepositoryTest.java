@@ -0,0 +1,105 @@
+package com.viking.server.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.viking.server.io.ByteBufferChannel;
+import com.viking.server.service.ContentRepositoryImplTest.ByteArrayDataSource;
+
+import jakarta.activation.DataHandler;
+
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingContentRepositoryTest {
+
+    private static final int ENTRY_SIZE = 40 * 1024;
+
+    private ContentRepositoryImpl delegate;
+    private CachingContentRepository repository;
+
+    @TempDir
+    Path storeDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        delegate = new ContentRepositoryImpl();
+        delegate.fileStorePath = storeDir.toString();
+        delegate.init();
+        repository = new CachingContentRepository(delegate, 64 * 1024, 64 * 1024);
+    }
+
+    @AfterEach
+    void tearDown() {
+        delegate.shutdown();
+    }
+
+    @Test
+    void testSecondLoadServedFromMemory() throws Exception {
+        byte[] data = content(ENTRY_SIZE, 1);
+        repository.storeContent("hot", handler(data));
+
+        repository.openContent("hot");
+        StoredContent cached = repository.openContent("hot");
+
+        try (ReadableByteChannel channel = cached.openChannel()) {
+            assertInstanceOf(ByteBufferChannel.class, channel);
+        }
+        assertArrayEquals(data, read(cached));
+        assertEquals(1, repository.stats().hits());
+        assertEquals(1, repository.stats().misses());
+    }
+
+    @Test
+    void testStoreInvalidatesEntry() throws Exception {
+        repository.storeContent("changing", handler(content(ENTRY_SIZE, 1)));
+        repository.openContent("changing");
+
+        byte[] updated = content(ENTRY_SIZE, 2);
+        repository.storeContent("changing", handler(updated));
+
+        assertArrayEquals(updated, read(repository.openContent("changing")));
+        assertEquals(2, repository.stats().misses());
+    }
+
+    @Test
+    void testColdContentDoesNotEvictHotContent() throws Exception {
+        repository.storeContent("hot", handler(content(ENTRY_SIZE, 1)));
+        repository.storeContent("cold", handler(content(ENTRY_SIZE, 2)));
+        for (int i = 0; i < 3; i++) {
+            repository.openContent("hot");
+        }
+
+        StoredContent cold = repository.openContent("cold");
+
+        try (ReadableByteChannel channel = cold.openChannel()) {
+            assertFalse(channel instanceof ByteBufferChannel);
+        }
+        assertEquals(1, repository.stats().rejections());
+        assertEquals(0, repository.stats().evictions());
+        assertEquals(ENTRY_SIZE, repository.stats().usedBytes());
+    }
+
+    private static byte[] content(int size, int seed) {
+        byte[] data = new byte[size];
+        Arrays.fill(data, (byte) (0x80 | seed));
+        return data;
+    }
+
+    private static DataHandler handler(byte[] data) {
+        return new DataHandler(new ByteArrayDataSource(data));
+    }
+
+    private static byte[] read(StoredContent content) throws Exception {
+        try (InputStream in = Channels.newInputStream(content.openChannel())) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.viking.server.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.viking.exception.ValidationException;
+import com.viking.server.service.ContentRepositoryImplTest.ByteArrayDataSource;
+
+import jakarta.activation.DataHandler;
+
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedUploadServiceTest {
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private ContentRepositoryImpl repository;
+    private ChunkedUploadService uploadService;
+
+    @TempDir
+    Path storeDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repository = new ContentRepositoryImpl();
+        repository.fileStorePath = storeDir.toString();
+        repository.init();
+        uploadService = new ChunkedUploadService(repository, repository);
+        uploadService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        uploadService.shutdown();
+        repository.shutdown();
+    }
+
+    @Test
+    void testChunksOutOfOrder() throws Exception {
+        byte[] data = content(2 * CHUNK_SIZE + 100);
+        ChunkedUploadService.UploadSession session = uploadService.beginUpload("chunked", data.length, CHUNK_SIZE);
+        assertEquals(3, session.chunkCount());
+
+        Map<Integer, String> checksums = new HashMap<>();
+        for (int index : new int[] {2, 0, 1}) {
+            checksums.put(index, uploadService.storeChunk(session.id(), index, chunk(data, index)));
+        }
+        assertEquals(3, uploadService.status(session.id()).receivedChunks().size());
+
+        assertEquals(data.length, uploadService.commit(session.id(), checksums));
+        try (InputStream in = Channels.newInputStream(repository.openContent("chunked").openChannel())) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void testCommitRejectsMissingAndBadChunks() throws Exception {
+        byte[] data = content(2 * CHUNK_SIZE);
+        ChunkedUploadService.UploadSession session = uploadService.beginUpload("resumed", data.length, CHUNK_SIZE);
+        Map<Integer, String> checksums = new HashMap<>();
+        checksums.put(0, uploadService.storeChunk(session.id(), 0, chunk(data, 0)));
+
+        ValidationException missing = assertThrows(ValidationException.class,
+                () -> uploadService.commit(session.id(), checksums));
+        assertTrue(missing.getMessage().contains("was not received"));
+
+        checksums.put(1, uploadService.storeChunk(session.id(), 1, chunk(data, 1)));
+        Map<Integer, String> corrupted = new HashMap<>(checksums);
+        corrupted.put(1, "00000000");
+        ValidationException mismatch = assertThrows(ValidationException.class,
+                () -> uploadService.commit(session.id(), corrupted));
+        assertTrue(mismatch.getMessage().contains("Checksum mismatch"));
+
+        // the session survives failed commits, so the upload can still complete
+        assertEquals(data.length, uploadService.commit(session.id(), checksums));
+    }
+
+    @Test
+    void testUploadLargerThanLimitRejected() {
+        assertThrows(ValidationException.class,
+                () -> uploadService.beginUpload("huge", ContentRepositoryImpl.MAX_FILE_SIZE + 1, CHUNK_SIZE));
+    }
+
+    @Test
+    void testInvalidNameRejectedAtBegin() {
+        assertThrows(ValidationException.class, () -> uploadService.beginUpload("плохойЖ", CHUNK_SIZE, CHUNK_SIZE));
+    }
+
+    @Test
+    void testChunkAfterCommitRejected() throws Exception {
+        byte[] data = content(CHUNK_SIZE);
+        ChunkedUploadService.UploadSession session = uploadService.beginUpload("closed", data.length, CHUNK_SIZE);
+        Map<Integer, String> checksums = Map.of(0, uploadService.storeChunk(session.id(), 0, chunk(data, 0)));
+        uploadService.commit(session.id(), checksums);
+
+        assertThrows(ValidationException.class, () -> uploadService.storeChunk(session.id(), 0, chunk(data, 0)));
+        assertThrows(ValidationException.class, () -> uploadService.commit(session.id(), checksums));
+    }
+
+    @Test
+    void testStagingChargedToQuota() throws Exception {
+        long before = repository.usedBytes();
+        byte[] data = content(2 * CHUNK_SIZE);
+        ChunkedUploadService.UploadSession session = uploadService.beginUpload("staged", data.length, CHUNK_SIZE);
+        assertEquals(before + data.length, repository.usedBytes());
+
+        Map<Integer, String> checksums = new HashMap<>();
+        checksums.put(0, uploadService.storeChunk(session.id(), 0, chunk(data, 0)));
+        checksums.put(1, uploadService.storeChunk(session.id(), 1, chunk(data, 1)));
+        uploadService.commit(session.id(), checksums);
+        // charged once, as stored content
+        assertEquals(before + data.length, repository.usedBytes());
+
+        ChunkedUploadService.UploadSession abandoned = uploadService.beginUpload("abandoned", data.length, CHUNK_SIZE);
+        uploadService.shutdown();
+        assertEquals(before + data.length, repository.usedBytes());
+        assertThrows(ValidationException.class, () -> uploadService.status(abandoned.id()));
+    }
+
+    @Test
+    void testStagingBeyondQuotaRejected() throws Exception {
+        int size = (int) ContentRepositoryImpl.MAX_FILE_SIZE;
+        for (int i = 0; i < 3; i++) {
+            uploadService.beginUpload("big-" + i, size, CHUNK_SIZE);
+        }
+        ValidationException e = assertThrows(ValidationException.class,
+                () -> uploadService.beginUpload("one-too-many", size, CHUNK_SIZE));
+        assertEquals(ValidationException.Reason.QUOTA, e.getReason());
+    }
+
+    @Test
+    void testIdleSessionsExpire() throws Exception {
+        uploadService.sessionTimeout = Duration.ofMillis(1);
+        long before = repository.usedBytes();
+        ChunkedUploadService.UploadSession session = uploadService.beginUpload("idle", CHUNK_SIZE, CHUNK_SIZE);
+        Thread.sleep(5);
+
+        uploadService.expireIdleSessions();
+
+        DataHandler late = chunk(content(CHUNK_SIZE), 0);
+        assertThrows(ValidationException.class, () -> uploadService.storeChunk(session.id(), 0, late));
+        assertEquals(before, repository.usedBytes());
+        assertFalse(Files.exists(session.file()));
+    }
+
+    @Test
+    void testStaleStagingFilesDeletedOnStartup() throws Exception {
+        ChunkedUploadService.UploadSession session = uploadService.beginUpload("left", CHUNK_SIZE, CHUNK_SIZE);
+        assertTrue(session.file().startsWith(storeDir));
+        Path stale = session.file().resolveSibling("crashed.upload");
+        Files.write(stale, new byte[CHUNK_SIZE]);
+
+        uploadService.shutdown();
+        uploadService.init();
+
+        assertFalse(Files.exists(session.file()));
+        assertFalse(Files.exists(stale));
+    }
+
+    private static byte[] content(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (0x80 | i);
+        }
+        return data;
+    }
+
+    private static DataHandler chunk(byte[] data, int index) {
+        int from = index * CHUNK_SIZE;
+        int to = Math.min(data.length, from + CHUNK_SIZE);
+        return new DataHandler(new ByteArrayDataSource(Arrays.copyOfRange(data, from, to)));
+    }
+}
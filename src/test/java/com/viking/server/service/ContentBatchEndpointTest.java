@@ -0,0 +1,117 @@
+package com.viking.server.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ws.samples.mtom.schema.ContentItem;
+import org.springframework.ws.samples.mtom.schema.ItemResult;
+import org.springframework.ws.samples.mtom.schema.LoadContentBatchRequest;
+import org.springframework.ws.samples.mtom.schema.LoadedItem;
+import org.springframework.ws.samples.mtom.schema.StoreContentBatchRequest;
+
+import com.viking.server.service.ContentRepositoryImplTest.ByteArrayDataSource;
+import com.viking.server.ws.ContentBatchEndpoint;
+import com.viking.server.ws.ContentBatchExecutor;
+
+import jakarta.activation.DataHandler;
+
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentBatchEndpointTest {
+
+    @TempDir
+    Path storeDir;
+
+    private ContentRepositoryImpl repository;
+    private ContentBatchExecutor batchExecutor;
+    private ContentBatchEndpoint endpoint;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repository = new ContentRepositoryImpl();
+        repository.fileStorePath = storeDir.toString();
+        repository.init();
+        batchExecutor = new ContentBatchExecutor(4);
+        endpoint = new ContentBatchEndpoint(repository, batchExecutor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        batchExecutor.close();
+        repository.shutdown();
+    }
+
+    @Test
+    void testStoreBatchReportsEveryItem() throws Exception {
+        StoreContentBatchRequest request = new StoreContentBatchRequest();
+        request.getItem().add(item("first", "plain text"));
+        request.getItem().add(item("плохойЖ", "bad name"));
+        request.getItem().add(item("config", "{\"json\": true}"));
+        request.getItem().add(item("last", "more text"));
+
+        List<ItemResult> results = endpoint.storeBatch(request).getResult();
+
+        assertEquals(List.of("first", "плохойЖ", "config", "last"), results.stream().map(ItemResult::getName).toList());
+        assertEquals(List.of(true, false, false, true), results.stream().map(ItemResult::isSuccess).toList());
+        assertEquals("Success", results.get(0).getMessage());
+        assertTrue(results.get(1).getMessage().contains("forbidden letter"));
+        assertTrue(results.get(2).getMessage().toLowerCase().contains("json"));
+        // the failures did not keep the others from being stored
+        assertEquals("more text", read(repository.openContent("last")));
+    }
+
+    @Test
+    void testStoreBatchKeepsRequestOrder() throws Exception {
+        StoreContentBatchRequest request = new StoreContentBatchRequest();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            names.add("item-" + i);
+            // uneven sizes, so items finish out of order on the pool
+            request.getItem().add(item("item-" + i, "x".repeat((32 - i) * 1024)));
+        }
+
+        List<ItemResult> results = endpoint.storeBatch(request).getResult();
+
+        assertEquals(names, results.stream().map(ItemResult::getName).toList());
+        assertTrue(results.stream().allMatch(ItemResult::isSuccess));
+    }
+
+    @Test
+    void testLoadBatchReportsMissingItems() throws Exception {
+        repository.storeContent("present", new DataHandler(new ByteArrayDataSource("here".getBytes())));
+        LoadContentBatchRequest request = new LoadContentBatchRequest();
+        request.getName().addAll(List.of("missing", "present"));
+
+        List<LoadedItem> items = endpoint.loadBatch(request).getItem();
+
+        assertEquals(List.of("missing", "present"), items.stream().map(LoadedItem::getName).toList());
+        assertFalse(items.get(0).isSuccess());
+        assertNull(items.get(0).getContent());
+        assertTrue(items.get(0).getMessage().contains("missing"));
+        assertTrue(items.get(1).isSuccess());
+        try (InputStream in = items.get(1).getContent().getInputStream()) {
+            assertEquals("here", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static ContentItem item(String name, String content) {
+        ContentItem item = new ContentItem();
+        item.setName(name);
+        item.setContent(new DataHandler(new ByteArrayDataSource(content.getBytes(StandardCharsets.UTF_8))));
+        return item;
+    }
+
+    private static String read(StoredContent content) throws Exception {
+        try (InputStream in = Channels.newInputStream(content.openChannel())) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.viking.server.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentIndexTest {
+
+    @TempDir
+    Path indexDir;
+
+    private ContentIndex index;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        index = ContentIndex.open(indexDir);
+    }
+
+    @AfterEach
+    void tearDown() {
+        index.close();
+    }
+
+    @Test
+    void testReplay() throws Exception {
+        index.put(entry("a", "objects/a", 10));
+        index.put(entry("b", "objects/b", 20));
+        index.put(entry("a", "objects/a", 15));
+        index.remove("b");
+
+        reopen();
+
+        assertEquals(List.of("a"), index.list("").stream().map(ContentIndex.Entry::name).toList());
+        assertEquals(15, index.find("a").diskSize());
+        assertEquals(15, index.storedBytes());
+    }
+
+    @Test
+    void testSharedFileCountedOnce() throws Exception {
+        assertNull(index.put(entry("first", "blobs/x", 100)));
+        assertNull(index.put(entry("second", "blobs/x", 100)));
+        assertEquals(100, index.storedBytes());
+
+        ContentIndex.Unlinked unlinked = index.remove("first");
+        assertFalse(unlinked.orphaned());
+        assertTrue(index.isReferenced("blobs/x"));
+
+        unlinked = index.put(entry("second", "blobs/y", 50));
+        assertTrue(unlinked.orphaned());
+        assertEquals("blobs/x", unlinked.entry().location());
+        assertEquals(50, index.storedBytes());
+    }
+
+    @Test
+    void testTornTailDiscarded() throws Exception {
+        index.put(entry("whole", "objects/whole", 1));
+        index.put(entry("torn", "objects/torn", 2));
+        index.close();
+        Path log = indexDir.resolve("content.log");
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        index = ContentIndex.open(indexDir);
+        index.put(entry("after", "objects/after", 4));
+        reopen();
+
+        assertNotNull(index.find("whole"));
+        assertNull(index.find("torn"));
+        assertNotNull(index.find("after"));
+        assertEquals(5, index.storedBytes());
+    }
+
+    @Test
+    void testCompactionKeepsLiveEntries() throws Exception {
+        for (int i = 0; i < 20_000; i++) {
+            index.put(entry("name-" + (i % 100), "objects/" + (i % 100), i));
+        }
+        long before = Files.size(indexDir.resolve("content.log"));
+
+        index.compact();
+        index.put(entry("late", "objects/late", 1));
+        reopen();
+
+        assertTrue(Files.size(indexDir.resolve("content.log")) < before / 10);
+        assertEquals(101, index.size());
+        assertEquals(19_999, index.find("name-99").diskSize());
+    }
+
+    @Test
+    void testVersionsNeverReused() throws Exception {
+        index.put(entry("gone", "objects/gone", 1));
+        long removedVersion = index.find("gone").version();
+        index.remove("gone");
+        index.compact();
+
+        reopen();
+
+        assertTrue(index.nextVersion() > removedVersion);
+    }
+
+    private void reopen() throws Exception {
+        index.close();
+        index = ContentIndex.open(indexDir);
+    }
+
+    private ContentIndex.Entry entry(String name, String location, long size) {
+        return new ContentIndex.Entry(name, location, index.nextVersion(), size, size, "digest-" + name, 0, null);
+    }
+}
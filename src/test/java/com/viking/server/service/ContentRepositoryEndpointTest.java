@@ -0,0 +1,213 @@
+package com.viking.server.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.ws.samples.mtom.schema.ContentEntry;
+import org.springframework.ws.samples.mtom.schema.ListContentRequest;
+import org.springframework.ws.samples.mtom.schema.LoadContentRangeRequest;
+import org.springframework.ws.samples.mtom.schema.LoadContentRangeResponse;
+import org.springframework.ws.samples.mtom.schema.LoadContentRequest;
+import org.springframework.ws.samples.mtom.schema.LoadContentResponse;
+
+import com.viking.exception.ValidationSoapException;
+import com.viking.server.metrics.ContentMetrics;
+import com.viking.server.service.ContentRepositoryImplTest.ByteArrayDataSource;
+import com.viking.server.ws.ContentRepositoryEndpoint;
+
+import jakarta.activation.DataHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentRepositoryEndpointTest {
+
+    @TempDir
+    Path storeDir;
+
+    private ContentRepositoryImpl repository;
+    private ContentRepositoryEndpoint endpoint;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repository = new ContentRepositoryImpl();
+        repository.fileStorePath = storeDir.toString();
+        repository.init();
+        endpoint = new ContentRepositoryEndpoint(repository, ContentMetrics.noop());
+        repository.storeContent("polled", new DataHandler(new ByteArrayDataSource("v1".getBytes())));
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.shutdown();
+    }
+
+    @Test
+    void testLoadCarriesDigest() throws Exception {
+        LoadContentResponse response = endpoint.load(request(null, null));
+
+        assertNotNull(response.getContent());
+        assertEquals(repository.contentInfo("polled").digest(), response.getDigest());
+        assertNull(response.isNotModified());
+    }
+
+    @Test
+    void testNotModifiedWhenDigestMatches() throws Exception {
+        String digest = endpoint.load(request(null, null)).getDigest();
+
+        LoadContentResponse response = endpoint.load(request(digest.toUpperCase(), null));
+
+        assertEquals(Boolean.TRUE, response.isNotModified());
+        assertNull(response.getContent());
+        assertEquals(digest, response.getDigest());
+    }
+
+    @Test
+    void testNotModifiedWhenVersionMatches() throws Exception {
+        long version = endpoint.load(request(null, null)).getVersion();
+
+        assertEquals(Boolean.TRUE, endpoint.load(request(null, version)).isNotModified());
+    }
+
+    @Test
+    void testModifiedContentSent() throws Exception {
+        LoadContentResponse first = endpoint.load(request(null, null));
+        repository.storeContent("polled", new DataHandler(new ByteArrayDataSource("v2".getBytes())));
+
+        LoadContentResponse response = endpoint.load(request(first.getDigest(), first.getVersion()));
+
+        assertNull(response.isNotModified());
+        assertNotNull(response.getContent());
+        assertNotEquals(first.getDigest(), response.getDigest());
+        assertTrue(response.getVersion() > first.getVersion());
+    }
+
+    @Test
+    void testListByPrefix() throws Exception {
+        repository.storeContent("dir/a", new DataHandler(new ByteArrayDataSource("a".getBytes())));
+        repository.storeContent("dir/sub/b", new DataHandler(new ByteArrayDataSource("bb".getBytes())));
+        ListContentRequest request = new ListContentRequest();
+        request.setPrefix("dir/");
+
+        List<ContentEntry> entries = endpoint.list(request).getEntry();
+
+        assertEquals(List.of("dir/a", "dir/sub/b"), entries.stream().map(ContentEntry::getName).toList());
+        assertEquals(2, entries.get(1).getSize());
+        assertEquals(repository.contentInfo("dir/sub/b").digest(), entries.get(1).getDigest());
+        assertEquals(3, endpoint.list(new ListContentRequest()).getEntry().size());
+    }
+
+    // ranges of 64 KB and more are served from a mapping, smaller ones with plain reads
+    @ParameterizedTest
+    @ValueSource(ints = { 10_000, 256 * 1024 })
+    void testRangeWithinContent(int size) throws Exception {
+        byte[] data = storeRanged(size);
+
+        LoadContentRangeResponse response = endpoint.loadRange(rangeRequest(size / 4, (long) size / 2));
+
+        assertEquals(size / 4, response.getOffset());
+        assertEquals(size / 2, response.getLength());
+        assertEquals(size, response.getTotalSize());
+        assertRangeContent(Arrays.copyOfRange(data, size / 4, size / 4 + size / 2), response);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 10_000, 256 * 1024 })
+    void testRangeRunningPastEndTruncated(int size) throws Exception {
+        byte[] data = storeRanged(size);
+
+        LoadContentRangeResponse response = endpoint.loadRange(rangeRequest(size / 2, (long) size));
+
+        assertEquals(size - size / 2, response.getLength());
+        assertRangeContent(Arrays.copyOfRange(data, size / 2, size), response);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 10_000, 256 * 1024 })
+    void testRangeWithoutLengthRunsToEnd(int size) throws Exception {
+        byte[] data = storeRanged(size);
+
+        LoadContentRangeResponse response = endpoint.loadRange(rangeRequest(1, null));
+
+        assertEquals(size - 1, response.getLength());
+        assertRangeContent(Arrays.copyOfRange(data, 1, size), response);
+    }
+
+    @Test
+    void testRangeAtEndIsEmpty() throws Exception {
+        byte[] data = storeRanged(10_000);
+
+        LoadContentRangeResponse response = endpoint.loadRange(rangeRequest(data.length, 10L));
+
+        assertEquals(0, response.getLength());
+        assertRangeContent(new byte[0], response);
+    }
+
+    @Test
+    void testZeroLengthRange() throws Exception {
+        storeRanged(10_000);
+
+        LoadContentRangeResponse response = endpoint.loadRange(rangeRequest(5, 0L));
+
+        assertEquals(0, response.getLength());
+        assertRangeContent(new byte[0], response);
+    }
+
+    @Test
+    void testRangePastEndRejected() throws Exception {
+        byte[] data = storeRanged(10_000);
+
+        assertThrows(ValidationSoapException.class, () -> endpoint.loadRange(rangeRequest(data.length + 1, null)));
+    }
+
+    @Test
+    void testNegativeRangeRejected() throws Exception {
+        storeRanged(10_000);
+
+        assertThrows(ValidationSoapException.class, () -> endpoint.loadRange(rangeRequest(-1, 10L)));
+        assertThrows(ValidationSoapException.class, () -> endpoint.loadRange(rangeRequest(0, -1L)));
+    }
+
+    private byte[] storeRanged(int size) throws Exception {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        data[0] = (byte) 0xFF; // never JSON
+        repository.storeContent("ranged", new DataHandler(new ByteArrayDataSource(data)));
+        return data;
+    }
+
+    /** Reads the range both ways a transport may: through writeTo and through the input stream. */
+    private static void assertRangeContent(byte[] expected, LoadContentRangeResponse response) throws Exception {
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        response.getContent().writeTo(written);
+        assertArrayEquals(expected, written.toByteArray());
+        try (InputStream in = response.getContent().getInputStream()) {
+            assertArrayEquals(expected, in.readAllBytes());
+        }
+    }
+
+    private static LoadContentRangeRequest rangeRequest(long offset, Long length) {
+        LoadContentRangeRequest request = new LoadContentRangeRequest();
+        request.setName("ranged");
+        request.setOffset(offset);
+        request.setLength(length);
+        return request;
+    }
+
+    private static LoadContentRequest request(String ifNoneMatch, Long ifNoneMatchVersion) {
+        LoadContentRequest request = new LoadContentRequest();
+        request.setName("polled");
+        request.setIfNoneMatch(ifNoneMatch);
+        request.setIfNoneMatchVersion(ifNoneMatchVersion);
+        return request;
+    }
+}
@@ -1,15 +1,43 @@
 package com.viking.server.service;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
+import com.viking.exception.ContentNotFoundException;
 import com.viking.exception.ValidationException;
+import com.viking.exception.VersionConflictException;
+import com.viking.server.metrics.ContentMetrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 import jakarta.activation.DataHandler;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -17,10 +45,20 @@ class ContentRepositoryImplTest {
 
     private ContentRepositoryImpl repository;
 
+    @TempDir
+    Path storeDir;
+
     @BeforeEach
-    void setUp() {
+    void setUp() throws Exception {
         repository = new ContentRepositoryImpl();
-        repository.fileStorePath = System.getProperty("java.io.tmpdir");
+        repository.fileStorePath = storeDir.toString();
+        repository.retiredFileGrace = Duration.ZERO;
+        repository.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.shutdown();
     }
 
     @Test
@@ -31,7 +69,27 @@ class ContentRepositoryImplTest {
 
         repository.storeContent(name, handler);
 
-        assertTrue(repository.loadContent(name).exists());
+        assertNotNull(repository.openContent(name));
+    }
+
+    @Test
+    void testOpenContent() throws Exception {
+        byte[] data = "Hello Channel".getBytes();
+        repository.storeContent("channelFile", new DataHandler(new ByteArrayDataSource(data)));
+
+        StoredContent content = repository.openContent("channelFile");
+        assertEquals(data.length, content.size());
+        try (ReadableByteChannel channel = content.openChannel()) {
+            assertInstanceOf(FileChannel.class, channel);
+            ByteBuffer buffer = ByteBuffer.allocate(data.length);
+            channel.read(buffer);
+            assertArrayEquals(data, buffer.array());
+        }
+    }
+
+    @Test
+    void testMissingContent() {
+        assertThrows(ContentNotFoundException.class, () -> repository.openContent("missing"));
     }
 
     @Test
@@ -70,6 +128,41 @@ class ContentRepositoryImplTest {
         assertTrue(ex.getMessage().contains("valid JSON"));
     }
 
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "{\"key\":123}", "[1, 2.5e-3, true, null, \"\\u0416\"]", "\"text\"", "123", " -0.5 ",
+        "true,", "null]", "{\"a\":1} trailing garbage", "", "  \n "
+    })
+    void testJsonDetected(String content) {
+        ValidationException ex = assertThrows(ValidationException.class,
+                () -> repository.validateNotJSON(content.getBytes(StandardCharsets.UTF_8)));
+
+        assertTrue(ex.getMessage().contains("valid JSON"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "Hello World", "{\"key\":}", "[1,]", "[,1]", "{'a':1}", "01", "1.", "-", "123abc", "trueish",
+        "tru", "{\"a\":1", "\"unterminated", "\"tab\there\"", "NaN", "// comment\n{}"
+    })
+    void testNonJsonAccepted(String content) {
+        assertDoesNotThrow(() -> repository.validateNotJSON(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testJsonDetectedInUtf16() {
+        byte[] data = "{\"key\":123}".getBytes(StandardCharsets.UTF_16LE);
+
+        assertThrows(ValidationException.class, () -> repository.validateNotJSON(data));
+    }
+
+    @Test
+    void testBinaryAccepted() {
+        byte[] data = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 16, 'J', 'F', 'I', 'F'};
+
+        assertDoesNotThrow(() -> repository.validateNotJSON(data));
+    }
+
     @Test
     void testVirtualQuotaExceeded() throws Exception {
         byte[] data = new byte[3 * 1024 * 1024];
@@ -87,6 +180,514 @@ class ContentRepositoryImplTest {
         assertTrue(ex.getMessage().contains("Storage quota exceeded"));
     }
 
+    @Test
+    void testOverwriteDoesNotGrowQuota() throws Exception {
+        byte[] data = new byte[1024 * 1024];
+
+        repository.storeContent("same", new DataHandler(new ByteArrayDataSource(data)));
+        repository.storeContent("same", new DataHandler(new ByteArrayDataSource(data)));
+
+        awaitUsedBytes(data.length);
+    }
+
+    @Test
+    void testRetiredFileChargedUntilDeleted() throws Exception {
+        repository.shutdown();
+        repository.retiredFileGrace = Duration.ofMinutes(1);
+        repository.init();
+        byte[] data = new byte[1024 * 1024];
+
+        repository.storeContent("same", new DataHandler(new ByteArrayDataSource(data)));
+        Path retired = ((FileStoredContent) repository.openContent("same")).path();
+        repository.storeContent("same", new DataHandler(new ByteArrayDataSource(data)));
+
+        assertTrue(Files.exists(retired));
+        assertEquals(2L * data.length, repository.usedBytes());
+    }
+
+    @Test
+    void testForeignFilesIgnoredByQuota() throws Exception {
+        Files.write(storeDir.resolve("unrelated.log"), new byte[4 * 1024 * 1024]);
+        repository.shutdown();
+        repository.init();
+
+        assertEquals(0, repository.usedBytes());
+    }
+
+    @Test
+    void testRejectedUploadReleasesQuota() {
+        byte[] json = "{\"key\":123}".getBytes();
+
+        assertThrows(ValidationException.class,
+                () -> repository.storeContent("jsonFile", new DataHandler(new ByteArrayDataSource(json))));
+
+        assertEquals(0, repository.usedBytes());
+    }
+
+    @Test
+    void testDeleteReleasesQuota() throws Exception {
+        repository.storeContent("doomed", new DataHandler(new ByteArrayDataSource(new byte[1024])));
+
+        assertTrue(repository.deleteContent("doomed"));
+        assertFalse(repository.deleteContent("doomed"));
+        awaitUsedBytes(0);
+        assertThrows(ContentNotFoundException.class, () -> repository.openContent("doomed"));
+    }
+
+    @Test
+    void testDedupDuplicatesCostNoQuota() throws Exception {
+        enableDedup();
+        byte[] data = new byte[3 * 1024 * 1024];
+        data[0] = 1;
+
+        for (int i = 0; i < 5; i++) {
+            repository.storeContent("copy" + i, new DataHandler(new ByteArrayDataSource(data)));
+        }
+
+        assertEquals(data.length, repository.usedBytes());
+        assertEquals(data.length, repository.openContent("copy4").size());
+        try (var blobs = Files.walk(storeDir.resolve(BlobStore.BLOB_DIR))) {
+            assertEquals(1, blobs.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void testDedupDuplicateStoredWhenQuotaFull() throws Exception {
+        enableDedup();
+        byte[] data = new byte[3 * 1024 * 1024];
+        for (int i = 0; i < 3; i++) {
+            data[0] = (byte) (i + 1);
+            repository.storeContent("distinct" + i, new DataHandler(new ByteArrayDataSource(data)));
+        }
+        long used = repository.usedBytes();
+
+        // 9 of 10 MB used: no room to spool 3 MB, but the content is already stored
+        repository.storeContent("duplicate", new DataHandler(new ByteArrayDataSource(data)));
+        assertEquals(used, repository.usedBytes());
+        assertEquals(data.length, repository.openContent("duplicate").size());
+
+        data[0] = 42;
+        ValidationException e = assertThrows(ValidationException.class,
+                () -> repository.storeContent("new", new DataHandler(new ByteArrayDataSource(data))));
+        assertEquals(ValidationException.Reason.QUOTA, e.getReason());
+        assertEquals(used, repository.usedBytes());
+    }
+
+    @Test
+    void testDedupReleasesBlobWithLastReference() throws Exception {
+        enableDedup();
+        byte[] first = "first content".getBytes();
+        byte[] second = "second content".getBytes();
+        repository.storeContent("a", new DataHandler(new ByteArrayDataSource(first)));
+        repository.storeContent("b", new DataHandler(new ByteArrayDataSource(first)));
+
+        repository.storeContent("a", new DataHandler(new ByteArrayDataSource(second)));
+        assertEquals(first.length + second.length, repository.usedBytes());
+
+        assertTrue(repository.deleteContent("b"));
+        awaitUsedBytes(second.length);
+        assertThrows(ContentNotFoundException.class, () -> repository.openContent("b"));
+        assertArrayEquals(second, readAll(repository.openContent("a")));
+    }
+
+    @Test
+    void testDedupIndexSurvivesRestart() throws Exception {
+        enableDedup();
+        byte[] data = "persistent".getBytes();
+        repository.storeContent("name with spaces", new DataHandler(new ByteArrayDataSource(data)));
+        repository.storeContent("twin", new DataHandler(new ByteArrayDataSource(data)));
+
+        repository.shutdown();
+        repository.init();
+
+        assertEquals(data.length, repository.usedBytes());
+        assertArrayEquals(data, readAll(repository.openContent("name with spaces")));
+        assertTrue(repository.deleteContent("twin"));
+        assertEquals(data.length, repository.usedBytes());
+    }
+
+    @Test
+    void testStoreThroughDiskIoPool() throws Exception {
+        repository.shutdown();
+        repository.diskIoThreads = 2;
+        repository.init();
+        byte[] data = new byte[200 * 1024];
+        data[0] = (byte) 0xFF;
+
+        try (ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+            requests.submit(() -> {
+                repository.storeContent("pooled", new DataHandler(new ByteArrayDataSource(data)));
+                return null;
+            }).get();
+        }
+
+        assertArrayEquals(data, readAll(repository.openContent("pooled")));
+        assertEquals(data.length, repository.usedBytes());
+    }
+
+    @Test
+    void testMetricsRecorded() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        repository.shutdown();
+        repository.metrics = new ContentMetrics(registry);
+        repository.init();
+
+        repository.storeContent("measured", new DataHandler(new ByteArrayDataSource(new byte[2048])));
+        assertThrows(ValidationException.class, () -> repository.storeContent("json",
+                new DataHandler(new ByteArrayDataSource("[1,2]".getBytes()))));
+
+        assertEquals(2048, registry.get("content.attachment.size").tag("direction", "in").summary().totalAmount());
+        assertEquals(1, registry.get("content.phase.duration").tag("phase", "disk_write").timer().count());
+        assertEquals(1, registry.get("content.validation.rejections").tag("reason", "json_content").counter().count());
+        assertEquals(2048, registry.get("content.storage.used").gauge().value());
+    }
+
+    @Test
+    void testCompressibleContentStoredCompressed() throws Exception {
+        enableCompression();
+        byte[] text = "All work and no play makes Jack a dull boy.\n".repeat(20_000).getBytes();
+
+        repository.storeContent("text", new DataHandler(new ByteArrayDataSource(text)));
+
+        StoredContent content = repository.openContent("text");
+        assertEquals(text.length, content.size());
+        assertEquals("deflate", content.encoding());
+        long diskSize = ((CompressedStoredContent) content).diskSize();
+        assertEquals(diskSize, Files.size(((CompressedStoredContent) content).path()));
+        assertTrue(diskSize < text.length / 10);
+        assertEquals(diskSize, repository.usedBytes());
+        assertArrayEquals(text, readAll(content));
+    }
+
+    @Test
+    void testCompressedFormatsStoredRaw() throws Exception {
+        enableCompression();
+        byte[] jpeg = new byte[64 * 1024];
+        jpeg[0] = (byte) 0xFF;
+        jpeg[1] = (byte) 0xD8;
+        jpeg[2] = (byte) 0xFF;
+        byte[] random = new byte[64 * 1024];
+        new Random(7).nextBytes(random);
+        random[0] = (byte) 0xFF;
+
+        repository.storeContent("jpeg", new DataHandler(new ByteArrayDataSource(jpeg)));
+        repository.storeContent("random", new DataHandler(new ByteArrayDataSource(random)));
+
+        assertNull(repository.openContent("jpeg").encoding());
+        assertNull(repository.openContent("random").encoding());
+        assertEquals(jpeg.length + random.length, repository.usedBytes());
+    }
+
+    @Test
+    void testContentLookingLikeHeaderIsWrapped() throws Exception {
+        byte[] data = new byte[1024];
+        System.arraycopy(ContentCompression.MAGIC, 0, data, 0, ContentCompression.MAGIC.length);
+
+        repository.storeContent("tricky", new DataHandler(new ByteArrayDataSource(data)));
+
+        StoredContent content = repository.openContent("tricky");
+        assertEquals(data.length, content.size());
+        assertArrayEquals(data, readAll(content));
+    }
+
+    @Test
+    void testRangeOfCompressedContent() throws Exception {
+        enableCompression();
+        byte[] text = "0123456789abcdef".repeat(4096).getBytes();
+        repository.storeContent("ranged", new DataHandler(new ByteArrayDataSource(text)));
+
+        try (ReadableByteChannel channel = repository.openContent("ranged").openChannel(40_000)) {
+            ByteBuffer buffer = ByteBuffer.allocate(16);
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+            }
+            assertEquals("0123456789abcdef", new String(buffer.array()));
+        }
+    }
+
+    @Test
+    void testListContentFromIndex() throws Exception {
+        repository.storeContent("reports/b", new DataHandler(new ByteArrayDataSource("bb".getBytes())));
+        repository.storeContent("reports/a", new DataHandler(new ByteArrayDataSource("a".getBytes())));
+        repository.storeContent("other", new DataHandler(new ByteArrayDataSource("other".getBytes())));
+
+        List<ContentInfo> reports = repository.listContent("reports/");
+
+        assertEquals(List.of("reports/a", "reports/b"), reports.stream().map(ContentInfo::name).toList());
+        assertEquals(2, reports.get(1).size());
+        assertEquals("application/octet-stream", reports.get(1).contentType());
+        assertEquals(64, reports.get(1).digest().length());
+        assertEquals(3, repository.listContent("").size());
+    }
+
+    @Test
+    void testIndexSurvivesRestart() throws Exception {
+        byte[] data = "indexed".getBytes();
+        repository.storeContent("kept", new DataHandler(new ByteArrayDataSource(data)));
+        repository.storeContent("dropped", new DataHandler(new ByteArrayDataSource(data)));
+        repository.deleteContent("dropped");
+
+        repository.shutdown();
+        repository.init();
+
+        assertEquals(List.of("kept"), repository.listContent("").stream().map(ContentInfo::name).toList());
+        assertEquals(data.length, repository.usedBytes());
+        assertArrayEquals(data, readAll(repository.openContent("kept")));
+    }
+
+    @Test
+    void testContentSharded() throws Exception {
+        repository.storeContent("sharded", new DataHandler(new ByteArrayDataSource("x".getBytes())));
+
+        Path file = ((FileStoredContent) repository.openContent("sharded")).path();
+        String hash = ContentIndex.nameHash("sharded");
+        long version = repository.openContent("sharded").version();
+        assertEquals(storeDir.resolve(ContentRepositoryImpl.OBJECT_DIR).resolve(hash.substring(0, 2))
+                .resolve(hash.substring(2, 4)).resolve(hash + "-" + version), file);
+    }
+
+    @Test
+    void testFlatLayoutNotImportedByDefault() throws Exception {
+        repository.shutdown();
+        Files.write(storeDir.resolve("stray.tmp"), "someone else's temp file".getBytes());
+        repository.init();
+
+        assertTrue(Files.exists(storeDir.resolve("stray.tmp")));
+        assertThrows(ContentNotFoundException.class, () -> repository.openContent("stray"));
+        assertEquals(0, repository.usedBytes());
+    }
+
+    @Test
+    void testFlatLayoutImportedOnceFromLegacyDir() throws Exception {
+        Path legacyDir = Files.createDirectories(storeDir.resolve("legacy"));
+        byte[] data = "from the flat layout".getBytes();
+        Files.write(legacyDir.resolve("legacy.tmp"), data);
+        Files.write(legacyDir.resolve("config.tmp"), "{\"json\": true}".getBytes());
+        repository.shutdown();
+        repository.legacyDir = legacyDir.toString();
+        repository.init();
+
+        assertFalse(Files.exists(legacyDir.resolve("legacy.tmp")));
+        assertArrayEquals(data, readAll(repository.openContent("legacy")));
+        assertEquals(data.length, repository.usedBytes());
+        // rejected like any JSON upload, and left in place
+        assertTrue(Files.exists(legacyDir.resolve("config.tmp")));
+        assertThrows(ContentNotFoundException.class, () -> repository.openContent("config"));
+
+        Files.write(legacyDir.resolve("late.tmp"), data);
+        repository.shutdown();
+        repository.init();
+        assertTrue(Files.exists(legacyDir.resolve("late.tmp")));
+        assertThrows(ContentNotFoundException.class, () -> repository.openContent("late"));
+    }
+
+    @Test
+    void testConditionalStore() throws Exception {
+        DataHandler first = new DataHandler(new ByteArrayDataSource("first".getBytes()));
+        DataHandler second = new DataHandler(new ByteArrayDataSource("second".getBytes()));
+
+        long version = repository.storeContent("guarded", first, ContentRepository.NO_VERSION);
+        VersionConflictException conflict = assertThrows(VersionConflictException.class,
+                () -> repository.storeContent("guarded", second, ContentRepository.NO_VERSION));
+        assertEquals(version, conflict.getCurrentVersion());
+        assertThrows(VersionConflictException.class,
+                () -> repository.storeContent("guarded", second, version + 1));
+
+        long next = repository.storeContent("guarded", second, version);
+        assertTrue(next > version);
+        assertEquals(next, repository.openContent("guarded").version());
+        awaitUsedBytes("second".length());
+    }
+
+    @Test
+    void testDigestKeptWithContent() throws Exception {
+        enableCompression();
+        byte[] data = "digested once, at store time ".repeat(100).getBytes(StandardCharsets.UTF_8);
+        String digest = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+
+        long version = repository.storeContent("digested", new DataHandler(new ByteArrayDataSource(data)),
+                ContentRepository.ANY_VERSION);
+
+        StoredContent content = repository.openContent("digested");
+        assertInstanceOf(CompressedStoredContent.class, content);
+        assertEquals(digest, content.digest());
+        ContentInfo info = repository.contentInfo("digested");
+        assertEquals(version, info.version());
+        assertEquals(digest, info.digest());
+        assertThrows(ContentNotFoundException.class, () -> repository.contentInfo("missing"));
+
+        repository.shutdown();
+        repository.init();
+        assertEquals(digest, repository.openContent("digested").digest());
+    }
+
+    /**
+     * Writers hammer a few names with content whose bytes all equal the
+     * writer's id and whose length is derived from it, while readers check
+     * that every load is one complete version.
+     */
+    @Test
+    void testConcurrentStoresOfSameNames() throws Exception {
+        int names = 4;
+        int writers = 8;
+        int storesPerWriter = 50;
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger loads = new AtomicInteger();
+
+        try (ExecutorService threads = Executors.newFixedThreadPool(writers + 4)) {
+            List<Future<?>> readers = new ArrayList<>();
+            for (int r = 0; r < 4; r++) {
+                readers.add(threads.submit(() -> {
+                    Random random = new Random();
+                    while (writing.get()) {
+                        StoredContent content;
+                        try {
+                            content = repository.openContent("hot-" + random.nextInt(names));
+                        } catch (ContentNotFoundException e) {
+                            continue;
+                        }
+                        byte[] data = readAll(content);
+                        assertEquals(content.size(), data.length);
+                        int writer = data[0];
+                        assertEquals(contentLength(writer), data.length);
+                        for (byte b : data) {
+                            assertEquals(writer, b);
+                        }
+                        loads.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            List<Future<?>> stores = new ArrayList<>();
+            for (int w = 1; w <= writers; w++) {
+                byte[] data = new byte[contentLength(w)];
+                Arrays.fill(data, (byte) w);
+                stores.add(threads.submit(() -> {
+                    Random random = new Random();
+                    for (int i = 0; i < storesPerWriter; i++) {
+                        repository.storeContent("hot-" + random.nextInt(names),
+                                new DataHandler(new ByteArrayDataSource(data)));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> store : stores) {
+                store.get();
+            }
+            writing.set(false);
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+        }
+
+        assertTrue(loads.get() > 0);
+        long used = 0;
+        for (ContentInfo info : repository.listContent("hot-")) {
+            StoredContent content = repository.openContent(info.name());
+            assertEquals(info.version(), content.version());
+            used += content.size();
+        }
+        assertEquals(names, repository.listContent("hot-").size());
+        awaitUsedBytes(used);
+    }
+
+    private static int contentLength(int writer) {
+        return 1000 + writer * 100;
+    }
+
+    @Test
+    void testLruEvictsLeastRecentlyRead() throws Exception {
+        enableRetention(ContentRetention.Policy.LRU, 0.5, 0.45);
+        byte[] data = new byte[2 * 1024 * 1024];
+        repository.storeContent("a", new DataHandler(new ByteArrayDataSource(data)));
+        repository.storeContent("b", new DataHandler(new ByteArrayDataSource(data)));
+        Thread.sleep(5);
+        repository.openContent("a");
+        Thread.sleep(5);
+
+        // past the high watermark: evicts down to the low one, least recently read first
+        repository.storeContent("c", new DataHandler(new ByteArrayDataSource(data)));
+
+        awaitEviction("b");
+        assertEquals(List.of("a", "c"), repository.listContent("").stream().map(ContentInfo::name).toList());
+        awaitUsedBytes(2L * data.length);
+    }
+
+    @Test
+    void testDefaultWatermarksLeaveRoomForFullSizeStore() throws Exception {
+        enableRetention(ContentRetention.Policy.LRU, 0.9, 0.75);
+        byte[] data = new byte[(int) ContentRepositoryImpl.MAX_FILE_SIZE];
+        repository.storeContent("a", new DataHandler(new ByteArrayDataSource(data)));
+        Thread.sleep(5);
+        repository.storeContent("b", new DataHandler(new ByteArrayDataSource(data)));
+        Thread.sleep(5);
+        repository.storeContent("c", new DataHandler(new ByteArrayDataSource(data)));
+
+        // 9 MB of 10 MB is under the 0.9 watermark, but another 3 MB store would not fit
+        awaitEviction("a");
+        awaitUsedBytes(2L * data.length);
+        repository.storeContent("d", new DataHandler(new ByteArrayDataSource(data)));
+        assertTrue(repository.listContent("").stream().anyMatch(info -> info.name().equals("d")));
+    }
+
+    @Test
+    void testTtlExpiresStoredContent() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        repository.metrics = new ContentMetrics(registry);
+        repository.retentionTtl = Duration.ofMillis(50);
+        enableRetention(ContentRetention.Policy.TTL, 0.9, 0.75);
+
+        repository.storeContent("short-lived", new DataHandler(new ByteArrayDataSource(new byte[1024])));
+
+        awaitEviction("short-lived");
+        awaitUsedBytes(0);
+        assertEquals(1.0, registry.get("content.storage.evictions").tag("cause", "expired").counter().count());
+    }
+
+    private void enableRetention(ContentRetention.Policy policy, double high, double low) throws Exception {
+        repository.shutdown();
+        repository.retentionPolicy = policy;
+        repository.retentionHighWatermark = high;
+        repository.retentionLowWatermark = low;
+        repository.retentionInterval = Duration.ofMillis(20);
+        repository.init();
+    }
+
+    private void awaitEviction(String name) throws Exception {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (repository.listContent(name).stream().anyMatch(info -> info.name().equals(name))) {
+            assertTrue(System.nanoTime() < deadline, name + " was not evicted");
+            Thread.sleep(10);
+        }
+        assertThrows(ContentNotFoundException.class, () -> repository.openContent(name));
+    }
+
+    /** Retired files are deleted, and credited, on a thread of their own. */
+    private void awaitUsedBytes(long expected) throws Exception {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (repository.usedBytes() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, repository.usedBytes());
+    }
+
+    private void enableCompression() throws Exception {
+        repository.shutdown();
+        repository.compression = true;
+        repository.init();
+    }
+
+    private static byte[] readAll(StoredContent content) throws Exception {
+        try (InputStream in = Channels.newInputStream(content.openChannel())) {
+            return in.readAllBytes();
+        }
+    }
+
+    private void enableDedup() throws Exception {
+        repository.shutdown();
+        repository.dedup = true;
+        repository.init();
+    }
+
     // вспомогательный класс
     static class ByteArrayDataSource implements jakarta.activation.DataSource {
         private final byte[] data;